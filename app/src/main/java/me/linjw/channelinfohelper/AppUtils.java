@@ -0,0 +1,15 @@
+package me.linjw.channelinfohelper;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+
+public class AppUtils {
+    public static String getApkPath(Context context) {
+        try {
+            return context.getPackageManager().getApplicationInfo(context.getPackageName(), 0).sourceDir;
+        } catch (PackageManager.NameNotFoundException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,72 @@
+package me.linjw.channelinfohelper;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+
+import java.io.File;
+
+/**
+ * 把读到的渠道信息保存到SharedPreferences,下次启动时不需要再去读apk。
+ * 缓存以apk路径、大小、修改时间和versionCode作为key,应用升级后这几项会变化,缓存自动失效
+ */
+class ChannelInfoCache {
+    private static final String PREFS_NAME = "channel_info_cache";
+    private static final String KEY_APK = "apk";
+    private static final String KEY_CHANNEL_INFO = "channel_info";
+
+    private final SharedPreferences mPrefs;
+    private final String mApkKey;
+
+    ChannelInfoCache(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mApkKey = buildApkKey(context);
+    }
+
+    /**
+     * 缓存是否和当前安装的apk匹配
+     */
+    boolean isValid() {
+        return mApkKey != null && mApkKey.equals(mPrefs.getString(KEY_APK, null));
+    }
+
+    /**
+     * 读取缓存的渠道信息,apk里没有渠道信息的话返回null
+     */
+    String getChannelInfo() {
+        return mPrefs.getString(KEY_CHANNEL_INFO, null);
+    }
+
+    void putChannelInfo(String channelInfo) {
+        if (mApkKey == null) {
+            return;
+        }
+        mPrefs.edit()
+                .putString(KEY_APK, mApkKey)
+                .putString(KEY_CHANNEL_INFO, channelInfo)
+                .apply();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static String buildApkKey(Context context) {
+        String apkPath = AppUtils.getApkPath(context);
+        if (apkPath == null) {
+            return null;
+        }
+
+        long versionCode;
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            versionCode = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                    ? info.getLongVersionCode() : info.versionCode;
+        } catch (PackageManager.NameNotFoundException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        File apk = new File(apkPath);
+        return apkPath + ":" + apk.length() + ":" + apk.lastModified() + ":" + versionCode;
+    }
+}
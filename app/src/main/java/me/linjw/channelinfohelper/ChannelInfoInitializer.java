@@ -0,0 +1,45 @@
+package me.linjw.channelinfohelper;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+/**
+ * 进程启动时在Application.onCreate之前创建,在后台线程提前读取渠道信息,
+ * 之后{@link ChannelInfoReader}的调用直接拿到读好的结果或者等待正在进行的读取。
+ * 这里只启动线程,不会阻塞启动流程
+ */
+public class ChannelInfoInitializer extends ContentProvider {
+
+    @Override
+    public boolean onCreate() {
+        new ChannelInfoReader().prefetch(getContext());
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return 0;
+    }
+}
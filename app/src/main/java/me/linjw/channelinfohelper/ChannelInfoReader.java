@@ -1,20 +1,185 @@
 package me.linjw.channelinfohelper;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ChannelInfoReader implements IChannelInfoReader {
-    private IChannelInfoReader[] mReaders = new IChannelInfoReader[]{
-            new ChannelInfoReaderV1(),
-            new ChannelInfoReaderV2()
-    };
+    // 渠道信息在进程内只读取一次,之后直接返回内存里的结果。
+    // 读取可以由prefetch提前在后台线程开始,之后的调用都等待同一次读取的结果。
+    // 读取失败的结果不会保留,下一次调用重新读取
+    private static final Object sLock = new Object();
+    private static ReadTask sTask;
+
+    // 进程内所有ChannelInfoReader共用的读取方式,默认一次读取同时检查V1和V2两种格式
+    private static IChannelInfoReader sReader = new UnifiedChannelInfoReader();
+
+    /**
+     * 设置进程内使用的读取方式,比如{@link MappedChannelInfoReader}使用内存映射的方式读取。
+     * 因为进程内只读取一次,只对之后开始的读取生效,已经开始或者完成的读取不受影响。
+     * {@link ChannelInfoInitializer}在Application.onCreate之前就会开始读取,
+     * 需要在Application.attachBaseContext里设置
+     */
+    public static void setReader(IChannelInfoReader reader) {
+        synchronized (sLock) {
+            sReader = reader;
+        }
+    }
 
+    /**
+     * 同步读取渠道信息。已经在后台读取的话等待它的结果,还没有开始的话直接在当前线程读取
+     */
     public String getChannelInfo(Context context) {
-        for (IChannelInfoReader reader : mReaders) {
-            String channelInfo = reader.getChannelInfo(context);
-            if(channelInfo != null) {
-                return channelInfo;
+        ReadTask task = obtainTask(context);
+        if (task.claim()) {
+            task.run();
+        }
+        return task.getResult();
+    }
+
+    /**
+     * 异步读取渠道信息,读取完成后在主线程回调,已经读取过的话也会在主线程回调
+     */
+    public void getChannelInfo(Context context, IChannelInfoCallback callback) {
+        start(context).addCallback(callback);
+    }
+
+    /**
+     * 在后台线程开始读取渠道信息,已经开始的话直接返回正在进行或者已经完成的读取。
+     * 一般由{@link ChannelInfoInitializer}在进程启动的时候调用
+     */
+    public Future<String> prefetch(Context context) {
+        return start(context);
+    }
+
+    private ReadTask start(Context context) {
+        ReadTask task = obtainTask(context);
+        if (task.claim()) {
+            Thread thread = new Thread(task, "ChannelInfoPrefetch");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return task;
+    }
+
+    private static ReadTask obtainTask(Context context) {
+        synchronized (sLock) {
+            if (sTask == null || sTask.isFailed()) {
+                sTask = new ReadTask(sReader, context.getApplicationContext());
             }
+            return sTask;
+        }
+    }
+
+    private static String readChannelInfo(IChannelInfoReader reader, Context context) throws IOException {
+        // 先查磁盘缓存,只有第一次启动或者应用升级之后才需要去读apk
+        ChannelInfoCache cache = new ChannelInfoCache(context);
+        if (cache.isValid()) {
+            return cache.getChannelInfo();
+        }
+
+        // 读取失败时异常直接抛给FutureTask,不写入缓存,否则会一直返回null直到应用升级
+        String channelInfo = reader.readChannelInfo(context);
+        cache.putChannelInfo(channelInfo);
+        return channelInfo;
+    }
+
+    private static class ReadTask extends FutureTask<String> {
+        private final List<IChannelInfoCallback> mCallbacks = new ArrayList<>();
+        private final AtomicBoolean mClaimed = new AtomicBoolean();
+        private volatile boolean mFailed;
+
+        ReadTask(final IChannelInfoReader reader, final Context context) {
+            super(new Callable<String>() {
+                @Override
+                public String call() throws IOException {
+                    return readChannelInfo(reader, context);
+                }
+            });
+        }
+
+        /**
+         * 只有第一个调用的线程返回true,由它负责执行读取
+         */
+        boolean claim() {
+            return mClaimed.compareAndSet(false, true);
+        }
+
+        /**
+         * 读取是否抛出了异常
+         */
+        boolean isFailed() {
+            return mFailed;
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            mFailed = true;
+            super.setException(t);
+        }
+
+        void addCallback(IChannelInfoCallback callback) {
+            synchronized (mCallbacks) {
+                if (!isDone()) {
+                    mCallbacks.add(callback);
+                    return;
+                }
+            }
+            post(callback);
+        }
+
+        @Override
+        protected void done() {
+            List<IChannelInfoCallback> callbacks;
+            synchronized (mCallbacks) {
+                callbacks = new ArrayList<>(mCallbacks);
+                mCallbacks.clear();
+            }
+            for (IChannelInfoCallback callback : callbacks) {
+                post(callback);
+            }
+        }
+
+        /**
+         * 等待读取完成,读取失败的话返回null
+         */
+        String getResult() {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return get();
+                    } catch (InterruptedException e) {
+                        // 渠道信息很快就能读完,被中断也继续等待,返回前恢复中断状态
+                        interrupted = true;
+                    }
+                }
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+                return null;
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void post(final IChannelInfoCallback callback) {
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onChannelInfo(getResult());
+                }
+            });
         }
-        return null;
     }
 }
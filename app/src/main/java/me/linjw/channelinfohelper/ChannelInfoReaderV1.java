@@ -2,17 +2,30 @@ package me.linjw.channelinfohelper;
 
 import android.content.Context;
 
+import java.io.IOException;
 import java.io.RandomAccessFile;
 
 public class ChannelInfoReaderV1 implements IChannelInfoReader {
 
     @Override
     public String getChannelInfo(Context context) {
-        String apkPath = Utils.getApkPath(context);
+        try {
+            return readChannelInfo(context);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public String readChannelInfo(Context context) throws IOException {
+        String apkPath = AppUtils.getApkPath(context);
         if (apkPath == null) {
             return null;
         }
         RandomAccessFile apk = null;
+        String channelInfo = null;
+        ChannelInfoTrace.begin(ChannelInfoTrace.Kind.READ, apkPath);
         try {
             apk = new RandomAccessFile(apkPath, "r");
 
@@ -20,6 +33,7 @@ public class ChannelInfoReaderV1 implements IChannelInfoReader {
             long sigPosition = apk.length() - Integer.BYTES;
             int sig = Utils.readInt(apk, sigPosition);
             if (sig != Utils.CHANNEL_INFO_SIG) {
+                ChannelInfoTrace.onFailure("no channel info", null);
                 return null;
             }
 
@@ -31,14 +45,18 @@ public class ChannelInfoReaderV1 implements IChannelInfoReader {
             }
 
             // 根据长度读取渠道信息
+            long begin = ChannelInfoTrace.beginPhase();
             long infoPosition = lengthPosition - length;
-            return Utils.readString(apk, infoPosition, length);
-        } catch (Exception e) {
-            e.printStackTrace();
+            channelInfo = Utils.readString(apk, infoPosition, length);
+            ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.READ_CHANNEL_INFO, begin);
+            ChannelInfoTrace.onVersion(ChannelInfoTrace.VERSION_V1);
+            return channelInfo;
+        } catch (IOException | RuntimeException e) {
+            ChannelInfoTrace.onFailure(e);
+            throw e;
         } finally {
             Utils.safeClose(apk);
+            ChannelInfoTrace.end(channelInfo != null);
         }
-
-        return null;
     }
 }
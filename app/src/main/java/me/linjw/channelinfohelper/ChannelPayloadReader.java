@@ -0,0 +1,29 @@
+package me.linjw.channelinfohelper;
+
+import android.content.Context;
+
+import java.io.RandomAccessFile;
+
+/**
+ * 读取{@link ChannelInfoWriterV2#addChannelPayload}写入的多键值对渠道信息。
+ * 整个ChannelPayload只需要一次读取,之后按key查找不需要再访问文件
+ */
+public class ChannelPayloadReader {
+
+    public ChannelPayload getChannelPayload(Context context) {
+        String apkPath = AppUtils.getApkPath(context);
+        if (apkPath == null) {
+            return null;
+        }
+        RandomAccessFile apk = null;
+        try {
+            apk = new RandomAccessFile(apkPath, "r");
+            return ChannelInfoParser.getChannelPayload(apk.getChannel());
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            Utils.safeClose(apk);
+        }
+        return null;
+    }
+}
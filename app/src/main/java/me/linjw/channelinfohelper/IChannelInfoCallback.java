@@ -0,0 +1,8 @@
+package me.linjw.channelinfohelper;
+
+/**
+ * 异步读取渠道信息的回调,在主线程调用,没有渠道信息或者读取失败时channelInfo为null
+ */
+public interface IChannelInfoCallback {
+    void onChannelInfo(String channelInfo);
+}
@@ -2,6 +2,17 @@ package me.linjw.channelinfohelper;
 
 import android.content.Context;
 
+import java.io.IOException;
+
 public interface IChannelInfoReader {
     String getChannelInfo(Context context);
+
+    /**
+     * 和{@link #getChannelInfo}一样,但是读取失败时抛出IOException,
+     * 用于区分"apk里没有渠道信息"和"读取失败",只有前者才可以缓存下来。
+     * 默认实现无法区分这两种情况,读取失败也只会返回null
+     */
+    default String readChannelInfo(Context context) throws IOException {
+        return getChannelInfo(context);
+    }
 }
@@ -1,5 +0,0 @@
-package me.linjw.channelinfohelper;
-
-public interface IChannelInfoWriter {
-    boolean addChannelInfo(String srcApk, String outputApk, String channelInfo);
-}
@@ -11,8 +11,13 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        TextView textView = findViewById(R.id.text);
-        IChannelInfoReader reader = new ChannelInfoReader();
-        textView.setText("ChannelInfo : " + reader.getChannelInfo(this));
+        // 渠道信息已经由ChannelInfoInitializer在后台读取,这里不会在主线程做io
+        final TextView textView = findViewById(R.id.text);
+        new ChannelInfoReader().getChannelInfo(this, new IChannelInfoCallback() {
+            @Override
+            public void onChannelInfo(String channelInfo) {
+                textView.setText("ChannelInfo : " + channelInfo);
+            }
+        });
     }
 }
@@ -0,0 +1,32 @@
+package me.linjw.channelinfohelper;
+
+import android.content.Context;
+
+import java.io.IOException;
+
+/**
+ * 使用内存映射读取V1和V2格式的渠道信息。
+ * apk一般已经在page cache里,映射之后的查找只是内存访问,
+ * 具体的解析见{@link MappedChannelInfoParser#getChannelInfo}
+ */
+public class MappedChannelInfoReader implements IChannelInfoReader {
+
+    @Override
+    public String getChannelInfo(Context context) {
+        try {
+            return readChannelInfo(context);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public String readChannelInfo(Context context) throws IOException {
+        String apkPath = AppUtils.getApkPath(context);
+        if (apkPath == null) {
+            return null;
+        }
+        return MappedChannelInfoParser.getChannelInfo(apkPath);
+    }
+}
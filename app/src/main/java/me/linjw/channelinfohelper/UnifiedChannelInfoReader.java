@@ -0,0 +1,42 @@
+package me.linjw.channelinfohelper;
+
+import android.content.Context;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * 同时支持V1和V2格式的渠道信息读取。
+ * 只打开一次apk,具体的解析见{@link ChannelInfoParser#getChannelInfo}
+ */
+public class UnifiedChannelInfoReader implements IChannelInfoReader {
+
+    @Override
+    public String getChannelInfo(Context context) {
+        try {
+            return readChannelInfo(context);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public String readChannelInfo(Context context) throws IOException {
+        String apkPath = AppUtils.getApkPath(context);
+        if (apkPath == null) {
+            return null;
+        }
+        RandomAccessFile apk = null;
+        String channelInfo = null;
+        ChannelInfoTrace.begin(ChannelInfoTrace.Kind.READ, apkPath);
+        try {
+            apk = new RandomAccessFile(apkPath, "r");
+            channelInfo = ChannelInfoParser.getChannelInfo(apk.getChannel());
+            return channelInfo;
+        } finally {
+            Utils.safeClose(apk);
+            ChannelInfoTrace.end(channelInfo != null);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package me.linjw.channelinfohelper.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 生成benchmark使用的apk: 一个普通的zip包,可以指定注释长度,
+ * 以及在central directory前面插入指定大小的APK签名块
+ */
+final class ApkFixtures {
+    private static final int EOCD_SIG = 0x06054b50;
+    private static final int EOCD_POSITION_SOCD_OFFSET = 16;
+    private static final int SIG_V2_ID = 0x7109871a;
+    private static final byte[] SIG_V2_MAGIC_NUMBER = "APK Sig Block 42".getBytes(StandardCharsets.UTF_8);
+
+    private ApkFixtures() {
+    }
+
+    /**
+     * @param contentSize      zip包里的数据大小
+     * @param signV2BlockSize  APK签名块的大小,为0时不插入APK签名块
+     * @param commentLength    zip包注释的长度
+     */
+    static File create(int contentSize, int signV2BlockSize, int commentLength) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(contentSize + signV2BlockSize + commentLength + 1024);
+        ZipOutputStream zos = new ZipOutputStream(bos);
+        zos.setMethod(ZipOutputStream.STORED);
+        byte[] data = new byte[contentSize];
+        new Random(contentSize).nextBytes(data);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ZipEntry entry = new ZipEntry("classes.dex");
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc.getValue());
+        zos.putNextEntry(entry);
+        zos.write(data);
+        zos.closeEntry();
+        if (commentLength > 0) {
+            char[] comment = new char[commentLength];
+            Arrays.fill(comment, 'c');
+            zos.setComment(new String(comment));
+        }
+        zos.close();
+        byte[] zip = bos.toByteArray();
+
+        File file = File.createTempFile("channel-bench", ".apk");
+        file.deleteOnExit();
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            if (signV2BlockSize <= 0) {
+                fos.write(zip);
+                return file;
+            }
+
+            ByteBuffer zipBuffer = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+            int eocdOffset = findEocd(zipBuffer, commentLength);
+            int socdOffset = zipBuffer.getInt(eocdOffset + EOCD_POSITION_SOCD_OFFSET);
+            byte[] signV2Block = createSignV2Block(signV2BlockSize);
+            zipBuffer.putInt(eocdOffset + EOCD_POSITION_SOCD_OFFSET, socdOffset + signV2Block.length);
+
+            fos.write(zip, 0, socdOffset);
+            fos.write(signV2Block);
+            fos.write(zip, socdOffset, zip.length - socdOffset);
+        } finally {
+            fos.close();
+        }
+        return file;
+    }
+
+    private static int findEocd(ByteBuffer zip, int commentLength) {
+        int position = zip.capacity() - 22 - commentLength;
+        if (zip.getInt(position) != EOCD_SIG) {
+            throw new IllegalStateException("eocd not found");
+        }
+        return position;
+    }
+
+    private static byte[] createSignV2Block(int size) {
+        // 一个占满整个APK签名块的键值对
+        int valueLength = size - Long.BYTES - (Long.BYTES + Integer.BYTES) - Long.BYTES - SIG_V2_MAGIC_NUMBER.length;
+        if (valueLength < 0) {
+            throw new IllegalArgumentException("sign v2 block too small: " + size);
+        }
+        ByteBuffer block = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        long blockSize = size - Long.BYTES;
+        block.putLong(blockSize);
+        block.putLong(valueLength + Integer.BYTES);
+        block.putInt(SIG_V2_ID);
+        block.position(block.position() + valueLength);
+        block.putLong(blockSize);
+        block.put(SIG_V2_MAGIC_NUMBER);
+        return block.array();
+    }
+}
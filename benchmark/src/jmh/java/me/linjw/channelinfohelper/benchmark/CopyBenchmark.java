@@ -0,0 +1,67 @@
+package me.linjw.channelinfohelper.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import me.linjw.channelinfohelper.ICopyEngine;
+import me.linjw.channelinfohelper.MappedCopyEngine;
+import me.linjw.channelinfohelper.TransferCopyEngine;
+import me.linjw.channelinfohelper.Utils;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CopyBenchmark {
+    @Param({"1", "16", "64"})
+    public int sizeMb;
+
+    @Param({"transfer", "mapped"})
+    public String engine;
+
+    private RandomAccessFile mSrc;
+    private RandomAccessFile mDst;
+    private ICopyEngine mCopyEngine;
+    private long mLength;
+
+    @Setup
+    public void setUp() throws IOException {
+        File src = ApkFixtures.create(sizeMb * 1024 * 1024, 0, 0);
+        File dst = File.createTempFile("channel-bench", ".apk");
+        dst.deleteOnExit();
+        mSrc = new RandomAccessFile(src, "r");
+        mDst = new RandomAccessFile(dst, "rw");
+        mLength = mSrc.length();
+        mCopyEngine = "mapped".equals(engine) ? new MappedCopyEngine() : new TransferCopyEngine();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mSrc.close();
+        mDst.close();
+    }
+
+    @Benchmark
+    public void copyByLength() throws IOException {
+        mSrc.getChannel().position(0);
+        mDst.getChannel().position(0);
+        Utils.copyByLength(mSrc.getChannel(), mDst.getChannel(), mLength);
+    }
+
+    @Benchmark
+    public void copyEngine() throws IOException {
+        mDst.getChannel().position(0);
+        mCopyEngine.copy(mSrc.getChannel(), 0, mLength, mDst.getChannel());
+    }
+}
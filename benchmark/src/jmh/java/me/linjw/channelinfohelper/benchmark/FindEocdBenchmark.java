@@ -0,0 +1,45 @@
+package me.linjw.channelinfohelper.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import me.linjw.channelinfohelper.Utils;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FindEocdBenchmark {
+    @Param({"0", "1024", "65535"})
+    public int commentLength;
+
+    private RandomAccessFile mApk;
+
+    @Setup
+    public void setUp() throws IOException {
+        File file = ApkFixtures.create(1024 * 1024, 0, commentLength);
+        mApk = new RandomAccessFile(file, "r");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mApk.close();
+    }
+
+    @Benchmark
+    public ByteBuffer findEocd() throws IOException {
+        return Utils.findEocd(mApk.getChannel());
+    }
+}
@@ -0,0 +1,48 @@
+package me.linjw.channelinfohelper.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import me.linjw.channelinfohelper.ChannelInfoParser;
+import me.linjw.channelinfohelper.ChannelInfoWriterV2;
+import me.linjw.channelinfohelper.MappedChannelInfoParser;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReadChannelInfoBenchmark {
+    private String mApkPath;
+
+    @Setup
+    public void setUp() throws IOException {
+        File src = ApkFixtures.create(16 * 1024 * 1024, 4096, 0);
+        File apk = File.createTempFile("channel-bench", ".apk");
+        apk.deleteOnExit();
+        if (!new ChannelInfoWriterV2().addChannelInfo(src.getPath(), apk.getPath(), "benchmark")) {
+            throw new IllegalStateException("add channel info failed");
+        }
+        mApkPath = apk.getPath();
+    }
+
+    @Benchmark
+    public String readChannelInfo() throws IOException {
+        try (RandomAccessFile apk = new RandomAccessFile(mApkPath, "r")) {
+            return ChannelInfoParser.getChannelInfo(apk.getChannel());
+        }
+    }
+
+    @Benchmark
+    public String readChannelInfoMapped() throws IOException {
+        return MappedChannelInfoParser.getChannelInfo(mApkPath);
+    }
+}
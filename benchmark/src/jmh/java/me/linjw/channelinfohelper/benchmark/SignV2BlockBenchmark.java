@@ -0,0 +1,60 @@
+package me.linjw.channelinfohelper.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import me.linjw.channelinfohelper.ChannelInfoWriterV2;
+import me.linjw.channelinfohelper.SignV2BlockScanner;
+import me.linjw.channelinfohelper.Utils;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SignV2BlockBenchmark {
+    @Param({"4096", "65536", "524288"})
+    public int signV2BlockSize;
+
+    private RandomAccessFile mApk;
+    private long mSocdOffset;
+
+    @Setup
+    public void setUp() throws IOException {
+        // 渠道信息键值对在APK签名块的最后,扫描时需要跳过前面所有的键值对
+        File src = ApkFixtures.create(1024 * 1024, signV2BlockSize, 0);
+        File apk = File.createTempFile("channel-bench", ".apk");
+        apk.deleteOnExit();
+        if (!new ChannelInfoWriterV2().addChannelInfo(src.getPath(), apk.getPath(), "benchmark")) {
+            throw new IllegalStateException("add channel info failed");
+        }
+        mApk = new RandomAccessFile(apk, "r");
+        mSocdOffset = Utils.getSocdOffset(Utils.findEocd(mApk.getChannel()));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mApk.close();
+    }
+
+    @Benchmark
+    public Object getSignV2Block() throws IOException {
+        return Utils.getSignV2Block(mApk, mSocdOffset);
+    }
+
+    @Benchmark
+    public String scanChannelInfo() throws IOException {
+        SignV2BlockScanner scanner = SignV2BlockScanner.open(mApk.getChannel(), mSocdOffset);
+        return scanner.readString(scanner.find(Utils.CHANNEL_INFO_SIG));
+    }
+}
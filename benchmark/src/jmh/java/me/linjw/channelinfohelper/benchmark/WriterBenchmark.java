@@ -0,0 +1,47 @@
+package me.linjw.channelinfohelper.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import me.linjw.channelinfohelper.ChannelInfoWriterV1;
+import me.linjw.channelinfohelper.ChannelInfoWriterV2;
+import me.linjw.channelinfohelper.IChannelInfoWriter;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WriterBenchmark {
+    @Param({"v1", "v2"})
+    public String writer;
+
+    @Param({"16"})
+    public int sizeMb;
+
+    private IChannelInfoWriter mWriter;
+    private String mSrcApk;
+    private String mOutputApk;
+
+    @Setup
+    public void setUp() throws IOException {
+        mSrcApk = ApkFixtures.create(sizeMb * 1024 * 1024, 4096, 0).getPath();
+        File output = File.createTempFile("channel-bench", ".apk");
+        output.deleteOnExit();
+        mOutputApk = output.getPath();
+        mWriter = "v1".equals(writer) ? new ChannelInfoWriterV1() : new ChannelInfoWriterV2();
+    }
+
+    @Benchmark
+    public boolean addChannelInfo() {
+        return mWriter.addChannelInfo(mSrcApk, mOutputApk, "benchmark-channel");
+    }
+}
@@ -0,0 +1,189 @@
+package me.linjw.channelinfohelper.cli;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.ByteBuffer;
+
+import me.linjw.channelinfohelper.ApkLayout;
+import me.linjw.channelinfohelper.ChannelApkChannel;
+import me.linjw.channelinfohelper.Utils;
+
+/**
+ * 直接从源apk提供渠道包下载,不需要为每个渠道生成文件。
+ * 请求"/任意前缀/渠道.apk"时返回写入该渠道信息的渠道包,支持单个Range请求(206)以便断点续传。
+ * 多个Range的请求按普通请求处理,返回完整的渠道包
+ */
+class ChannelApkHttpHandler implements HttpHandler, Closeable {
+    private static final String CONTENT_TYPE = "application/vnd.android.package-archive";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final RandomAccessFile mSrcApk;
+    private final ApkLayout mLayout;
+    private final long mLastModified;
+
+    ChannelApkHttpHandler(String srcApk) throws IOException {
+        File file = new File(srcApk);
+        mSrcApk = new RandomAccessFile(file, "r");
+        mLastModified = file.lastModified();
+        mLayout = ApkLayout.parse(mSrcApk);
+        if (mLayout == null) {
+            Utils.safeClose(mSrcApk);
+            throw new IOException("not a zip file: " + srcApk);
+        }
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            boolean head = "HEAD".equals(method);
+            if (!head && !"GET".equals(method)) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            String channelInfo = getChannelInfo(exchange.getRequestURI().getRawPath());
+            if (channelInfo == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            ChannelApkChannel channelApk = ChannelApkChannel.open(mLayout, mSrcApk.getChannel(), channelInfo);
+            long length = channelApk.size();
+            String etag = "\"" + Long.toHexString(mLayout.getApkLength()) + "-" + Long.toHexString(mLastModified)
+                    + "-" + Integer.toHexString(channelInfo.hashCode()) + "\"";
+
+            Headers headers = exchange.getResponseHeaders();
+            headers.set("Content-Type", CONTENT_TYPE);
+            headers.set("Accept-Ranges", "bytes");
+            headers.set("ETag", etag);
+
+            // If-Range和当前的ETag不一致说明客户端下载到一半的文件已经过期,需要重新下载完整的文件
+            Headers requestHeaders = exchange.getRequestHeaders();
+            String range = requestHeaders.getFirst("Range");
+            String ifRange = requestHeaders.getFirst("If-Range");
+            if (ifRange != null && !ifRange.equals(etag)) {
+                range = null;
+            }
+
+            long start = 0;
+            long end = length - 1;
+            int code = 200;
+            if (range != null) {
+                long[] parsed = parseRange(range, length);
+                if (parsed == null) {
+                    headers.set("Content-Range", "bytes */" + length);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                if (parsed.length == 2) {
+                    start = parsed[0];
+                    end = parsed[1];
+                    code = 206;
+                    headers.set("Content-Range", "bytes " + start + "-" + end + "/" + length);
+                }
+            }
+
+            long contentLength = end - start + 1;
+            if (head) {
+                headers.set("Content-Length", String.valueOf(contentLength));
+                exchange.sendResponseHeaders(code, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(code, contentLength == 0 ? -1 : contentLength);
+            writeRange(channelApk, start, contentLength, exchange.getResponseBody());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        Utils.safeClose(mSrcApk);
+    }
+
+    /**
+     * 从路径的最后一段取出渠道信息。先按未解码的路径切分,渠道信息里的"%2F"不会被当成路径分隔符;
+     * 再按URI的规则解码,和URLDecoder不同,路径里的'+'是普通字符,不会被解码成空格
+     */
+    private static String getChannelInfo(String rawPath) {
+        int slash = rawPath.lastIndexOf('/');
+        String name = rawPath.substring(slash + 1);
+        if (!name.endsWith(".apk") || name.length() == ".apk".length()) {
+            return null;
+        }
+        try {
+            // 加上'/'之后解析为相对路径,渠道信息里有':'时也不会被当成scheme
+            return URI.create("/" + name.substring(0, name.length() - ".apk".length())).getPath().substring(1);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 解析"bytes=start-end"、"bytes=start-"和"bytes=-suffixLength"格式的Range。
+     *
+     * @return 范围有效时返回{start, end},格式不支持的话返回空数组,按普通请求处理,范围无效的话返回null
+     */
+    static long[] parseRange(String range, long length) {
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return new long[0];
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+
+        long start;
+        long end;
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                // 最后suffixLength个字节
+                long suffixLength = Long.parseLong(last);
+                if (suffixLength <= 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffixLength);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+            }
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+
+        if (start < 0 || start >= length || end < start) {
+            return null;
+        }
+        return new long[]{start, end};
+    }
+
+    private static void writeRange(ChannelApkChannel channelApk, long position, long length, OutputStream output)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(length, 1)));
+        long end = position + length;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channelApk.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            output.write(buffer.array(), 0, read);
+            position += read;
+        }
+        output.flush();
+    }
+}
@@ -0,0 +1,553 @@
+package me.linjw.channelinfohelper.cli;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpServer;
+
+import me.linjw.channelinfohelper.ChannelApkVerifier;
+import me.linjw.channelinfohelper.ChannelAuditResult;
+import me.linjw.channelinfohelper.ChannelAuditScanner;
+import me.linjw.channelinfohelper.ChannelDigest;
+import me.linjw.channelinfohelper.ChannelDigestWriter;
+import me.linjw.channelinfohelper.ChannelInfoParallelWriter;
+import me.linjw.channelinfohelper.ChannelInfoStats;
+import me.linjw.channelinfohelper.ChannelInfoTrace;
+import me.linjw.channelinfohelper.ChannelInfoWriter;
+import me.linjw.channelinfohelper.ChannelOverlayWriter;
+import me.linjw.channelinfohelper.ChannelTask;
+import me.linjw.channelinfohelper.IChannelAuditListener;
+import me.linjw.channelinfohelper.IChannelDigestListener;
+import me.linjw.channelinfohelper.IChannelInfoWriter;
+import me.linjw.channelinfohelper.JournaledChannelInfoWriter;
+import me.linjw.channelinfohelper.TransferCopyEngine;
+import me.linjw.channelinfohelper.Utils;
+
+/**
+ * 服务端批量生成渠道包的命令行工具。
+ *
+ * 单次运行:
+ *     ChannelInfoCli [-t 线程数] [-o 同时打开的输出文件数] 源apk 渠道列表文件 输出目录
+ *
+ * 常驻运行:
+ *     ChannelInfoCli --daemon [-t 线程数] [-o 同时打开的输出文件数]
+ *     从标准输入逐行读取任务,每行格式为"源apk 渠道列表文件 输出目录",输入quit或者EOF时退出。
+ *     线程池和JIT编译的结果在多个任务之间复用
+ *
+ * 渠道列表文件每行一个渠道,忽略空行和#开头的行。
+ * 每个渠道包输出为"输出目录/源apk名-渠道.apk"。
+ * 加上--verify参数时会在生成之后检查每个渠道包的结构和渠道信息,见{@link ChannelApkVerifier}
+ * 加上--reuse-padding参数时优先把渠道信息放到APK签名块的verity padding里,central directory不需要移动,
+ * overlay不使用这种方式,不能和--overlay一起使用
+ * 加上--journal参数时每个渠道包写完之后才会出现在输出目录,完成的渠道包记录在日志文件里,
+ * 中断之后使用同一个日志文件重新运行只会生成还没有完成的渠道包
+ * 加上--digest参数时生成渠道包的同时计算SHA-256和MD5,写到"输出目录/manifest.txt",
+ * 每行为"文件名 大小 SHA-256 MD5 渠道",以tab分隔。没有重新生成的渠道包(比如使用日志跳过的)
+ * 保留manifest里原来的记录,前提是文件还在、渠道和大小没有变化
+ * 加上--stats参数时会在每个任务结束之后输出各个阶段耗时的百分位数、读写字节数和失败原因,见{@link ChannelInfoStats}
+ *
+ * 加上--overlay参数时只输出渠道包相对于源apk的差异"输出目录/源apk名-渠道.overlay",
+ * 之后可以用下面的命令还原出完整的渠道包:
+ *     ChannelInfoCli --reconstruct 源apk overlay文件 输出apk
+ *
+ * 提供渠道包下载,不生成渠道包文件,请求"http://host:端口/渠道.apk"时直接从源apk返回对应的渠道包:
+ *     ChannelInfoCli --serve 端口 [-t 线程数] 源apk
+ *
+ * 检查目录下所有apk的渠道信息,每个apk输出一行"OK|WARN 路径 渠道 格式 [异常]",有异常时返回1:
+ *     ChannelInfoCli --audit [-t 线程数] 目录
+ */
+public class ChannelInfoCli {
+    private static final String USAGE = "usage: ChannelInfoCli [-t threads] [-o maxOpenFiles] [--overlay | --verify] [--stats] [--reuse-padding] [--journal file] [--digest] <srcApk> <channelList> <outputDir>\n"
+            + "       ChannelInfoCli --daemon [-t threads] [-o maxOpenFiles] [--overlay | --verify] [--stats] [--reuse-padding] [--journal file] [--digest]\n"
+            + "       ChannelInfoCli --reconstruct <srcApk> <overlay> <outputApk>\n"
+            + "       ChannelInfoCli --serve <port> [-t threads] <srcApk>\n"
+            + "       ChannelInfoCli --audit [-t threads] <dir>";
+
+    private static final String[] DIGEST_ALGORITHMS = {"SHA-256", "MD5"};
+    private static final String MANIFEST_NAME = "manifest.txt";
+
+    private final ChannelInfoParallelWriter mWriter;
+    private final TimingChannelInfoWriter mTimingWriter;
+    private final JournaledChannelInfoWriter mJournalWriter;
+    private final Map<String, ChannelDigest> mDigests;
+    private final PrintStream mOut;
+    private final String mOutputSuffix;
+    private final boolean mOverlay;
+    private boolean mVerify;
+    private ChannelInfoStats mStats;
+
+    /**
+     * options同时设置了overlay和reusePadding时抛出IllegalArgumentException,
+     * 设置了日志文件时读取已有的日志,读取失败时抛出IOException
+     */
+    public ChannelInfoCli(Options options, PrintStream out) throws IOException {
+        if (options.mOverlay && options.mReusePadding) {
+            // overlay记录的是渠道包相对于源apk的差异,不使用ChannelInfoWriterV2,reusePadding不会生效
+            throw new IllegalArgumentException("--overlay can't be used with --reuse-padding");
+        }
+        mOut = out;
+        mOverlay = options.mOverlay;
+        mOutputSuffix = options.mOverlay ? ".overlay" : ".apk";
+        mDigests = options.mDigest && !options.mOverlay ? new ConcurrentHashMap<String, ChannelDigest>() : null;
+        IChannelInfoWriter writer = newWriter(options.mOverlay, options.mReusePadding, mDigests);
+        mJournalWriter = options.mJournalFile == null
+                ? null
+                : new JournaledChannelInfoWriter(writer, options.mJournalFile);
+        mTimingWriter = new TimingChannelInfoWriter(mJournalWriter != null ? mJournalWriter : writer, out);
+        mWriter = new ChannelInfoParallelWriter(options.mThreads, options.mMaxOpenFiles, mTimingWriter);
+    }
+
+    private static IChannelInfoWriter newWriter(boolean overlay, boolean reusePadding,
+                                                final Map<String, ChannelDigest> digests) {
+        if (overlay) {
+            return new ChannelOverlayWriter();
+        }
+        if (digests == null) {
+            return new ChannelInfoWriter(new TransferCopyEngine(), reusePadding);
+        }
+        // 启用了日志的话outputApk是临时文件的路径,所以按渠道保存摘要
+        return new ChannelDigestWriter(new TransferCopyEngine(), reusePadding, new IChannelDigestListener() {
+            @Override
+            public void onDigest(String outputApk, ChannelDigest digest) {
+                digests.put(digest.getChannelInfo(), digest);
+            }
+        }, DIGEST_ALGORITHMS);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxOpenFiles = threads;
+        boolean daemon = false;
+        boolean overlay = false;
+        boolean reconstruct = false;
+        boolean verify = false;
+        boolean stats = false;
+        boolean reusePadding = false;
+        String journalFile = null;
+        boolean digest = false;
+        boolean audit = false;
+        int port = -1;
+        List<String> params = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--daemon".equals(arg)) {
+                daemon = true;
+            } else if ("--overlay".equals(arg)) {
+                overlay = true;
+            } else if ("--reconstruct".equals(arg)) {
+                reconstruct = true;
+            } else if ("--verify".equals(arg)) {
+                verify = true;
+            } else if ("--stats".equals(arg)) {
+                stats = true;
+            } else if ("--reuse-padding".equals(arg)) {
+                reusePadding = true;
+            } else if ("--audit".equals(arg)) {
+                audit = true;
+            } else if ("--digest".equals(arg)) {
+                digest = true;
+            } else if ("--journal".equals(arg) && i + 1 < args.length) {
+                journalFile = args[++i];
+            } else if ("--serve".equals(arg) && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if ("-t".equals(arg) && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if ("-o".equals(arg) && i + 1 < args.length) {
+                maxOpenFiles = Integer.parseInt(args[++i]);
+            } else {
+                params.add(arg);
+            }
+        }
+
+        if (port >= 0) {
+            if (params.size() != 1) {
+                System.err.println(USAGE);
+                System.exit(2);
+            }
+            serve(port, threads, params.get(0));
+            return;
+        }
+
+        if (audit) {
+            if (params.size() != 1) {
+                System.err.println(USAGE);
+                System.exit(2);
+            }
+            if (!audit(threads, params.get(0), System.out)) {
+                System.exit(1);
+            }
+            return;
+        }
+
+        if (daemon ? !params.isEmpty() : params.size() != 3) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        if (reconstruct) {
+            if (!new ChannelOverlayWriter().reconstruct(params.get(0), params.get(1), params.get(2))) {
+                System.err.println("reconstruct failed");
+                System.exit(1);
+            }
+            return;
+        }
+
+        if (overlay && reusePadding) {
+            System.err.println("--overlay can't be used with --reuse-padding");
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        ChannelInfoCli cli = new ChannelInfoCli(new Options()
+                .setThreads(threads)
+                .setMaxOpenFiles(maxOpenFiles)
+                .setOverlay(overlay)
+                .setReusePadding(reusePadding)
+                .setJournalFile(journalFile)
+                .setDigest(digest), System.out);
+        cli.setVerify(verify);
+        cli.setStats(stats);
+        try {
+            if (daemon) {
+                cli.runDaemon(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
+            } else if (!cli.runJob(params.get(0), params.get(1), params.get(2))) {
+                System.exit(1);
+            }
+        } finally {
+            cli.close();
+        }
+    }
+
+    /**
+     * 生成之后是否检查每个渠道包,只对完整的渠道包有效
+     */
+    public void setVerify(boolean verify) {
+        mVerify = verify;
+    }
+
+    /**
+     * 是否统计每个任务的读写数据,统计使用进程内全局的listener
+     */
+    public void setStats(boolean stats) {
+        if (stats == (mStats != null)) {
+            return;
+        }
+        mStats = stats ? new ChannelInfoStats() : null;
+        ChannelInfoTrace.setListener(mStats);
+    }
+
+    /**
+     * 检查root下所有apk的渠道信息,结果在检查完一个apk之后立即输出
+     *
+     * @return 是否所有apk都没有异常
+     */
+    private static boolean audit(int threads, String root, final PrintStream out) {
+        final AtomicInteger failed = new AtomicInteger();
+        long begin = System.nanoTime();
+        int count;
+        ChannelAuditScanner scanner = new ChannelAuditScanner(threads);
+        try {
+            count = scanner.scan(new File(root), new IChannelAuditListener() {
+                @Override
+                public void onResult(ChannelAuditResult result) {
+                    if (!result.isOk()) {
+                        failed.incrementAndGet();
+                    }
+                    out.println((result.isOk() ? "OK   " : "WARN ") + result);
+                }
+            });
+        } finally {
+            scanner.close();
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        out.printf("AUDIT %d files, %d with anomalies, %.2f s, %.1f files/s%n",
+                count, failed.get(), seconds, count / Math.max(seconds, 1e-9));
+        return failed.get() == 0;
+    }
+
+    /**
+     * 启动http服务提供渠道包下载,服务在后台线程运行直到进程退出
+     */
+    private static void serve(int port, int threads, String srcApk) throws IOException {
+        final ChannelApkHttpHandler handler = new ChannelApkHttpHandler(srcApk);
+        final HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/", handler);
+        server.setExecutor(Executors.newFixedThreadPool(threads));
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                server.stop(0);
+                handler.close();
+            }
+        });
+        System.out.println("serving " + srcApk + " on port " + server.getAddress().getPort());
+    }
+
+    /**
+     * 逐行读取任务并执行,直到读到quit或者EOF
+     */
+    public void runDaemon(BufferedReader input) throws IOException {
+        String line;
+        while ((line = input.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if ("quit".equals(line)) {
+                break;
+            }
+            String[] job = line.split("\\s+");
+            if (job.length != 3) {
+                mOut.println("ERROR bad job: " + line);
+                continue;
+            }
+            try {
+                runJob(job[0], job[1], job[2]);
+            } catch (IOException e) {
+                mOut.println("ERROR " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return 所有渠道包都生成成功时返回true
+     */
+    public boolean runJob(String srcApk, String channelList, String outputDir) throws IOException {
+        File outDir = new File(outputDir);
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            throw new IOException("can't create output dir " + outputDir);
+        }
+
+        String baseName = new File(srcApk).getName();
+        if (baseName.endsWith(".apk")) {
+            baseName = baseName.substring(0, baseName.length() - ".apk".length());
+        }
+        List<ChannelTask> tasks = new ArrayList<>();
+        for (String channel : readChannels(channelList)) {
+            String fileName = baseName + "-" + channel.replace(File.separatorChar, '_') + mOutputSuffix;
+            tasks.add(new ChannelTask(channel, new File(outDir, fileName).getPath()));
+        }
+
+        mTimingWriter.reset();
+        int skipped = mJournalWriter == null ? 0 : mJournalWriter.getSkipped();
+        if (mDigests != null) {
+            mDigests.clear();
+        }
+        if (mStats != null) {
+            mStats.reset();
+        }
+        long start = System.nanoTime();
+        List<Future<ChannelTask>> futures = mWriter.addChannelInfo(srcApk, tasks);
+        for (Future<ChannelTask> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                // 失败的任务已经由TimingChannelInfoWriter输出
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted", e);
+            }
+        }
+        long nanos = System.nanoTime() - start;
+
+        int succeeded = mTimingWriter.getSucceeded();
+        int failed = mTimingWriter.getFailed();
+        mOut.printf("DONE %d files, %d failed, %.2f s, %.1f files/s, %.1f MB/s%n",
+                succeeded, failed, nanos / 1e9,
+                nanos == 0 ? 0 : succeeded / (nanos / 1e9),
+                TimingChannelInfoWriter.megabytesPerSecond(mTimingWriter.getBytes(), nanos));
+        if (mDigests != null) {
+            writeManifest(new File(outDir, MANIFEST_NAME), tasks);
+        }
+        if (mJournalWriter != null) {
+            mOut.printf("SKIPPED %d files already in journal%n", mJournalWriter.getSkipped() - skipped);
+        }
+        if (mStats != null) {
+            // 在检查渠道包之前输出,避免把检查时的读取也统计进去
+            mOut.print(mStats.report());
+        }
+
+        if (mVerify && !mOverlay) {
+            failed += verify(tasks);
+        }
+        return failed == 0;
+    }
+
+    /**
+     * 检查生成的渠道包,输出有问题的渠道包
+     *
+     * @return 有问题的渠道包数量
+     */
+    private int verify(List<ChannelTask> tasks) {
+        int bad = 0;
+        long start = System.nanoTime();
+        for (ChannelTask task : tasks) {
+            if (!new File(task.getOutputApk()).exists()) {
+                continue;
+            }
+            ChannelApkVerifier.Result result = ChannelApkVerifier.verify(task.getOutputApk(), task.getChannelInfo());
+            if (!result.isOk()) {
+                bad++;
+                mOut.printf("BAD  %s %s %s%n", task.getChannelInfo(), task.getOutputApk(), result);
+            }
+        }
+        mOut.printf("VERIFIED %d files, %d bad, %.2f s%n", tasks.size(), bad, (System.nanoTime() - start) / 1e9);
+        return bad;
+    }
+
+    public void close() {
+        mWriter.close();
+        Utils.safeClose(mJournalWriter);
+    }
+
+    /**
+     * 和已有的manifest合并之后重写。这次生成的渠道包使用新的摘要,
+     * 其他渠道包(使用日志跳过的,或者之前的任务生成的)保留原来的记录,文件已经不在或者大小变了的记录会被丢掉
+     */
+    private void writeManifest(File manifest, List<ChannelTask> tasks) throws IOException {
+        Map<String, String[]> entries = readManifest(manifest);
+        for (ChannelTask task : tasks) {
+            ChannelDigest digest = mDigests.get(task.getChannelInfo());
+            if (digest != null) {
+                String name = new File(task.getOutputApk()).getName();
+                entries.put(name, new String[]{name, String.valueOf(digest.getLength()),
+                        digest.getHexDigest(DIGEST_ALGORITHMS[0]), digest.getHexDigest(DIGEST_ALGORITHMS[1]),
+                        task.getChannelInfo()});
+            }
+        }
+
+        int count = 0;
+        PrintStream out = null;
+        try {
+            out = new PrintStream(new FileOutputStream(manifest), false, "UTF-8");
+            for (String[] entry : entries.values()) {
+                File file = new File(manifest.getParentFile(), entry[0]);
+                if (!file.isFile() || !String.valueOf(file.length()).equals(entry[1])) {
+                    continue;
+                }
+                out.printf("%s\t%s\t%s\t%s\t%s%n", entry[0], entry[1], entry[2], entry[3], entry[4]);
+                count++;
+            }
+        } finally {
+            Utils.safeClose(out);
+        }
+        mOut.printf("MANIFEST %s %d files%n", manifest.getPath(), count);
+    }
+
+    /**
+     * @return 文件名到"文件名 大小 SHA-256 MD5 渠道"的映射,按manifest里的顺序,manifest不存在的话返回空的映射
+     */
+    private static Map<String, String[]> readManifest(File manifest) throws IOException {
+        Map<String, String[]> entries = new LinkedHashMap<>();
+        if (!manifest.isFile()) {
+            return entries;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 5);
+                if (fields.length == 5) {
+                    entries.put(fields[0], fields);
+                }
+            }
+        } finally {
+            Utils.safeClose(reader);
+        }
+        return entries;
+    }
+
+    private static List<String> readChannels(String channelList) throws IOException {
+        List<String> channels = new ArrayList<>();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(channelList), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    channels.add(line);
+                }
+            }
+        } finally {
+            Utils.safeClose(reader);
+        }
+        return channels;
+    }
+
+    /**
+     * 创建{@link ChannelInfoCli}时的参数,对应命令行里的同名参数
+     */
+    public static class Options {
+        private int mThreads = Runtime.getRuntime().availableProcessors();
+        private int mMaxOpenFiles = mThreads;
+        private boolean mOverlay;
+        private boolean mReusePadding;
+        private String mJournalFile;
+        private boolean mDigest;
+
+        public Options setThreads(int threads) {
+            mThreads = threads;
+            return this;
+        }
+
+        /**
+         * 同时打开的输出文件数,见{@link ChannelInfoParallelWriter}
+         */
+        public Options setMaxOpenFiles(int maxOpenFiles) {
+            mMaxOpenFiles = maxOpenFiles;
+            return this;
+        }
+
+        /**
+         * 只输出渠道包相对于源apk的差异,不能和reusePadding同时使用
+         */
+        public Options setOverlay(boolean overlay) {
+            mOverlay = overlay;
+            return this;
+        }
+
+        /**
+         * 优先把渠道信息放到APK签名块的verity padding里,见{@link ChannelInfoWriter}
+         */
+        public Options setReusePadding(boolean reusePadding) {
+            mReusePadding = reusePadding;
+            return this;
+        }
+
+        /**
+         * 不为null时每个渠道包先写到临时文件再重命名,完成的渠道包记录到日志里,
+         * 中断之后重新运行会跳过已经完成的渠道包,见{@link JournaledChannelInfoWriter}
+         */
+        public Options setJournalFile(String journalFile) {
+            mJournalFile = journalFile;
+            return this;
+        }
+
+        /**
+         * 生成渠道包的同时计算SHA-256和MD5,每个任务结束后写到"输出目录/manifest.txt",只对完整的渠道包有效
+         */
+        public Options setDigest(boolean digest) {
+            mDigest = digest;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package me.linjw.channelinfohelper.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.linjw.channelinfohelper.ApkLayout;
+import me.linjw.channelinfohelper.IChannelInfoWriter;
+
+/**
+ * 包装一个IChannelInfoWriter,统计每个渠道包的耗时和大小并输出
+ */
+class TimingChannelInfoWriter implements IChannelInfoWriter {
+    private final IChannelInfoWriter mWriter;
+    private final PrintStream mOut;
+    private final AtomicInteger mSucceeded = new AtomicInteger();
+    private final AtomicInteger mFailed = new AtomicInteger();
+    private final AtomicLong mBytes = new AtomicLong();
+
+    TimingChannelInfoWriter(IChannelInfoWriter writer, PrintStream out) {
+        mWriter = writer;
+        mOut = out;
+    }
+
+    @Override
+    public boolean addChannelInfo(String srcApk, String outputApk, String channelInfo) {
+        long start = System.nanoTime();
+        boolean success = mWriter.addChannelInfo(srcApk, outputApk, channelInfo);
+        report(outputApk, channelInfo, success, System.nanoTime() - start);
+        return success;
+    }
+
+    @Override
+    public boolean addChannelInfo(ApkLayout srcLayout, FileChannel srcChannel, String outputApk, String channelInfo) {
+        long start = System.nanoTime();
+        boolean success = mWriter.addChannelInfo(srcLayout, srcChannel, outputApk, channelInfo);
+        report(outputApk, channelInfo, success, System.nanoTime() - start);
+        return success;
+    }
+
+    @Override
+    public boolean addChannelInfo(ApkLayout srcLayout, FileChannel srcChannel, WritableByteChannel output,
+                                  String channelInfo) {
+        long start = System.nanoTime();
+        long startPosition = position(output);
+        boolean success = mWriter.addChannelInfo(srcLayout, srcChannel, output, channelInfo);
+        long nanos = System.nanoTime() - start;
+
+        // 只有能获取位置的输出才能统计写入的大小
+        long bytes = startPosition < 0 ? 0 : position(output) - startPosition;
+        report(String.valueOf(output), channelInfo, success, bytes, nanos);
+        return success;
+    }
+
+    /**
+     * 清空统计数据,开始统计新的任务
+     */
+    void reset() {
+        mSucceeded.set(0);
+        mFailed.set(0);
+        mBytes.set(0);
+    }
+
+    int getSucceeded() {
+        return mSucceeded.get();
+    }
+
+    int getFailed() {
+        return mFailed.get();
+    }
+
+    long getBytes() {
+        return mBytes.get();
+    }
+
+    private void report(String outputApk, String channelInfo, boolean success, long nanos) {
+        report(outputApk, channelInfo, success, success ? new File(outputApk).length() : 0, nanos);
+    }
+
+    private void report(String outputApk, String channelInfo, boolean success, long bytes, long nanos) {
+        if (!success) {
+            mFailed.incrementAndGet();
+            mOut.printf("FAIL %s %s%n", channelInfo, outputApk);
+            return;
+        }
+
+        mSucceeded.incrementAndGet();
+        mBytes.addAndGet(bytes);
+        double millis = nanos / 1e6;
+        mOut.printf("OK   %s %s %.1f ms %.1f MB/s%n", channelInfo, outputApk, millis, megabytesPerSecond(bytes, nanos));
+    }
+
+    private static long position(WritableByteChannel output) {
+        if (!(output instanceof SeekableByteChannel)) {
+            return -1;
+        }
+        try {
+            return ((SeekableByteChannel) output).position();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    static double megabytesPerSecond(long bytes, long nanos) {
+        return nanos == 0 ? 0 : bytes / (1024.0 * 1024.0) / (nanos / 1e9);
+    }
+}
@@ -0,0 +1,180 @@
+package me.linjw.channelinfohelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 源apk的结构信息: EOCD、zip64 EOCD、socd offset以及APK签名块。
+ * 只在创建时解析一次,之后不再改变,可以在生成多个渠道包的时候重复使用
+ */
+public class ApkLayout {
+    private final long mApkLength;
+    private final ByteBuffer mEocd;
+    private final long mSocdOffset;
+    private final Zip64Eocd mZip64Eocd;
+    private final long mSignV2BlockOffset;
+    private final ByteBuffer mSignV2Block;
+    private final String mSourceKey;
+
+    private ApkLayout(long apkLength, ByteBuffer eocd, Zip64Eocd zip64Eocd, long socdOffset,
+                      long signV2BlockOffset, ByteBuffer signV2Block, String sourceKey) {
+        mApkLength = apkLength;
+        mEocd = eocd;
+        mZip64Eocd = zip64Eocd;
+        mSocdOffset = socdOffset;
+        mSignV2BlockOffset = signV2BlockOffset;
+        mSignV2Block = signV2Block;
+        mSourceKey = sourceKey;
+    }
+
+    public static ApkLayout parse(String apkPath) throws IOException {
+        RandomAccessFile apk = null;
+        try {
+            File file = new File(apkPath);
+            apk = new RandomAccessFile(file, "r");
+            return parse(apk, file);
+        } finally {
+            Utils.safeClose(apk);
+        }
+    }
+
+    public static ApkLayout parse(RandomAccessFile apk) throws IOException {
+        return parse(apk, null);
+    }
+
+    /**
+     * file为apk对应的文件,用于识别同一个源apk,见{@link #getSourceKey()}
+     */
+    public static ApkLayout parse(RandomAccessFile apk, File file) throws IOException {
+        // 查找eocd
+        long begin = ChannelInfoTrace.beginPhase();
+        ByteBuffer eocd = Utils.findEocd(apk.getChannel());
+        if (eocd == null) {
+            ChannelInfoTrace.onFailure("eocd not found", null);
+            return null;
+        }
+
+        // zip64格式的socd offset保存在zip64 eocd record里
+        long apkLength = apk.length();
+        Zip64Eocd zip64Eocd = Zip64Eocd.read(apk.getChannel(), apkLength - eocd.capacity());
+        long socdOffset = Utils.getSocdOffset(eocd);
+        if (socdOffset == Zip64Eocd.ZIP64_MAGIC_VALUE) {
+            if (zip64Eocd == null) {
+                ChannelInfoTrace.onFailure("zip64 eocd not found", null);
+                return null;
+            }
+            socdOffset = zip64Eocd.getSocdOffset();
+        }
+        ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.FIND_EOCD, begin);
+
+        // 获取APK签名块,没有APK签名块的apk只能使用V1方式写入渠道信息
+        begin = ChannelInfoTrace.beginPhase();
+        Utils.Pair<Long, ByteBuffer> signV2Block = Utils.getSignV2Block(apk, socdOffset);
+        ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.READ_SIGN_BLOCK, begin);
+        String sourceKey = file == null ? null : getSourceKey(file, apkLength);
+        if (signV2Block == null) {
+            return new ApkLayout(apkLength, eocd, zip64Eocd, socdOffset, -1, null, sourceKey);
+        }
+        return new ApkLayout(apkLength, eocd, zip64Eocd, socdOffset, signV2Block.first, signV2Block.second,
+                sourceKey);
+    }
+
+    /**
+     * 和{@link MappedChannelInfoParser}一样以路径、长度和修改时间识别源apk,
+     * 同一个文件重新解析得到的ApkLayout返回相同的值,文件被修改之后返回的值会变化。
+     * 解析时不知道对应的文件的话返回null
+     */
+    String getSourceKey() {
+        return mSourceKey;
+    }
+
+    private static String getSourceKey(File file, long length) {
+        return file.getAbsolutePath() + '\0' + length + '\0' + file.lastModified();
+    }
+
+    public long getApkLength() {
+        return mApkLength;
+    }
+
+    public long getEocdOffset() {
+        return mApkLength - mEocd.capacity();
+    }
+
+    /**
+     * 返回eocd的一份拷贝,调用方可以随意修改而不会影响到其他渠道包
+     */
+    public ByteBuffer getEocd() {
+        return getEocd(BlockBuffers.HEAP);
+    }
+
+    ByteBuffer getEocd(BlockBuffers buffers) {
+        ByteBuffer eocd = buffers.allocate(mEocd.capacity());
+        ByteBuffer src = mEocd.duplicate();
+        src.position(0);
+        eocd.put(src);
+        eocd.flip();
+        return eocd;
+    }
+
+    public long getSocdOffset() {
+        return mSocdOffset;
+    }
+
+    public boolean isZip64() {
+        return mZip64Eocd != null;
+    }
+
+    /**
+     * central directory的结束位置,zip64格式的话后面还有zip64 eocd record和zip64 eocd locator
+     */
+    public long getCentralDirectoryEnd() {
+        return mZip64Eocd != null ? mZip64Eocd.getRecordOffset() : getEocdOffset();
+    }
+
+    /**
+     * 返回central directory后面的数据(zip64 eocd record、zip64 eocd locator以及eocd),
+     * 其中的socd offset已经修改为newSocdOffset
+     */
+    public ByteBuffer getTail(long newSocdOffset) throws IOException {
+        return getTail(newSocdOffset, BlockBuffers.HEAP);
+    }
+
+    ByteBuffer getTail(long newSocdOffset, BlockBuffers buffers) throws IOException {
+        ByteBuffer eocd = getEocd(buffers);
+        Utils.setSocdOffset(eocd, newSocdOffset, mZip64Eocd != null);
+        if (mZip64Eocd == null) {
+            return eocd;
+        }
+
+        ByteBuffer zip64Eocd = mZip64Eocd.build(newSocdOffset);
+        ByteBuffer tail = buffers.allocate(zip64Eocd.remaining() + eocd.remaining());
+        tail.put(zip64Eocd);
+        tail.put(eocd);
+        tail.flip();
+        return tail;
+    }
+
+    public boolean hasSignV2Block() {
+        return mSignV2Block != null;
+    }
+
+    public long getSignV2BlockOffset() {
+        return mSignV2BlockOffset;
+    }
+
+    /**
+     * 返回APK签名块的只读视图,多个渠道包共享同一份数据
+     */
+    public ByteBuffer getSignV2Block() {
+        if (mSignV2Block == null) {
+            return null;
+        }
+        ByteBuffer block = mSignV2Block.asReadOnlyBuffer();
+        block.order(ByteOrder.LITTLE_ENDIAN);
+        block.position(0);
+        return block;
+    }
+}
@@ -0,0 +1,71 @@
+package me.linjw.channelinfohelper;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 生成渠道包时新的APK签名块和eocd使用的内存。
+ *
+ * {@link #HEAP}每次都分配新的内存,生成的{@link ChannelApk}可以一直持有,比如{@link ChannelApkChannel}。
+ * {@link #obtain()}返回当前线程自己的一块内存,批量生成时每个工作线程反复使用它,
+ * 稳定之后每个渠道包基本不需要再分配大块内存。
+ * 下一次obtain的时候之前分配的数据就会被覆盖,所以只能用于在同一个线程里生成之后马上写出的渠道包。
+ *
+ * 分配出来的内存不会清零,需要全部写一遍
+ */
+final class BlockBuffers {
+    static final BlockBuffers HEAP = new BlockBuffers(false);
+
+    // 超过这个大小的APK签名块很少见,不在线程里缓存,避免一直占着内存
+    private static final int MAX_REUSE_SIZE = 8 * 1024 * 1024;
+    private static final int MIN_MEMORY_SIZE = 16 * 1024;
+
+    private static final ThreadLocal<BlockBuffers> sThreadBuffers = new ThreadLocal<BlockBuffers>() {
+        @Override
+        protected BlockBuffers initialValue() {
+            return new BlockBuffers(true);
+        }
+    };
+
+    private final boolean mReuse;
+    private byte[] mMemory;
+    private int mUsed;
+
+    private BlockBuffers(boolean reuse) {
+        mReuse = reuse;
+    }
+
+    /**
+     * 返回当前线程的BlockBuffers,之前从它分配的数据都会失效
+     */
+    static BlockBuffers obtain() {
+        BlockBuffers buffers = sThreadBuffers.get();
+        buffers.mUsed = 0;
+        return buffers;
+    }
+
+    /**
+     * 分配capacity刚好为size的小端buffer
+     */
+    ByteBuffer allocate(int size) {
+        if (!mReuse || size > MAX_REUSE_SIZE) {
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        }
+
+        // 剩余空间不够的话换一块更大的内存,已经分配出去的buffer仍然引用旧的内存,不受影响
+        if (mMemory == null || mMemory.length - mUsed < size) {
+            int length = Math.max(MIN_MEMORY_SIZE, mMemory == null ? 0 : mMemory.length * 2);
+            while (length < size) {
+                length *= 2;
+            }
+            mMemory = new byte[length];
+            mUsed = 0;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(mMemory, mUsed, size).slice();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        mUsed += size;
+        return buffer;
+    }
+}
@@ -0,0 +1,264 @@
+package me.linjw.channelinfohelper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 渠道包的组成: 源apk开头原样不变的一段数据(prefix),加上后面重新生成的数据(tail)。
+ * tail由若干段组成,每一段要么引用源apk里的一段数据(比如central directory),要么是内存里新生成的数据:
+ *
+ * V2: [源apk 0 ~ APK签名块] [新的APK签名块] [源apk的central directory] [修改后的eocd]
+ * V1: [源apk 0 ~ eocd]     [插入渠道信息后的eocd]
+ *
+ * 只描述渠道包的结构,不持有源apk的文件,写出的时候再传入
+ */
+public class ChannelApk {
+    // 一边计算摘要一边写出tail的时候每次从源apk读取的大小
+    private static final int COPY_CHUNK_SIZE = 256 * 1024;
+
+    private final long mPrefixLength;
+    private final List<Segment> mSegments = new ArrayList<>();
+    private long mTailLength;
+
+    ChannelApk(long prefixLength) {
+        mPrefixLength = prefixLength;
+    }
+
+    /**
+     * 在tail后面追加源apk里从offset开始的length个字节
+     */
+    ChannelApk appendSource(long offset, long length) {
+        mSegments.add(new Segment(mTailLength, offset, length, null));
+        mTailLength += length;
+        return this;
+    }
+
+    /**
+     * 在tail后面追加新生成的数据,追加的是buffer的position到limit之间的数据
+     */
+    ChannelApk appendBuffer(ByteBuffer buffer) {
+        ByteBuffer data = buffer.slice().asReadOnlyBuffer();
+        mSegments.add(new Segment(mTailLength, -1, data.remaining(), data));
+        mTailLength += data.remaining();
+        return this;
+    }
+
+    /**
+     * 和源apk相同的开头部分的长度
+     */
+    public long getPrefixLength() {
+        return mPrefixLength;
+    }
+
+    public long getTailLength() {
+        return mTailLength;
+    }
+
+    /**
+     * 整个渠道包的长度
+     */
+    public long getLength() {
+        return mPrefixLength + mTailLength;
+    }
+
+    /**
+     * 把整个渠道包写到dst,开头不变的部分使用copyEngine从src拷贝
+     */
+    public void writeTo(FileChannel src, WritableByteChannel dst, ICopyEngine copyEngine) throws IOException {
+        long begin = ChannelInfoTrace.beginPhase();
+        copyEngine.copy(src, 0, mPrefixLength, dst);
+        ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.COPY_PREFIX, begin);
+        writeTail(src, dst, copyEngine);
+    }
+
+    /**
+     * 写出渠道包的同时计算摘要。digests需要已经输入了prefix的数据,一般由{@link ChannelApkDigester#begin}得到,
+     * 这里只把tail的数据输入进去,所以计算摘要的开销只和tail的大小有关。
+     * tail里引用源apk的数据读到内存之后同时用于计算摘要和写出,不需要再读一次
+     */
+    public void writeTo(FileChannel src, WritableByteChannel dst, ICopyEngine copyEngine, MessageDigest[] digests)
+            throws IOException {
+        long begin = ChannelInfoTrace.beginPhase();
+        copyEngine.copy(src, 0, mPrefixLength, dst);
+        ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.COPY_PREFIX, begin);
+
+        ByteBuffer chunk = null;
+        for (Segment segment : mSegments) {
+            begin = ChannelInfoTrace.beginPhase();
+            if (segment.mBuffer != null) {
+                update(digests, segment.mBuffer);
+                Utils.writeFully(dst, segment.mBuffer.duplicate());
+                ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.WRITE_TAIL, begin);
+                continue;
+            }
+
+            if (chunk == null) {
+                chunk = ByteBuffer.allocate((int) Math.min(COPY_CHUNK_SIZE, Math.max(mTailLength, 1)));
+            }
+            long position = segment.mOffset;
+            long end = segment.mOffset + segment.mLength;
+            while (position < end) {
+                chunk.clear();
+                chunk.limit((int) Math.min(chunk.capacity(), end - position));
+                Utils.readFully(src, chunk, position);
+                chunk.flip();
+                position += chunk.remaining();
+                update(digests, chunk);
+                Utils.writeFully(dst, chunk);
+            }
+            ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.COPY_CENTRAL_DIRECTORY, begin);
+        }
+    }
+
+    private static void update(MessageDigest[] digests, ByteBuffer buffer) {
+        for (MessageDigest digest : digests) {
+            digest.update(buffer.duplicate());
+        }
+    }
+
+    /**
+     * 只写出prefix后面的部分
+     */
+    public void writeTail(FileChannel src, WritableByteChannel dst, ICopyEngine copyEngine) throws IOException {
+        for (Segment segment : mSegments) {
+            long begin = ChannelInfoTrace.beginPhase();
+            if (segment.mBuffer == null) {
+                copyEngine.copy(src, segment.mOffset, segment.mLength, dst);
+                ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.COPY_CENTRAL_DIRECTORY, begin);
+            } else {
+                Utils.writeFully(dst, segment.mBuffer.duplicate());
+                ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.WRITE_TAIL, begin);
+            }
+        }
+    }
+
+    /**
+     * tail里引用源apk的数据是否都还在原来的位置,
+     * 也就是说渠道包只是在源apk的基础上覆盖了几段新生成的数据
+     */
+    public boolean isInPlace() {
+        for (Segment segment : mSegments) {
+            if (segment.mBuffer == null && segment.mOffset != mPrefixLength + segment.mTailOffset) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 把新生成的数据写到dst里对应的位置,dst为源apk或者源apk的拷贝,而且不比渠道包长的时候,写完就得到了渠道包。
+     * 可以先用文件系统的克隆(比如cp --reflink)复制源apk,再调用这个方法,每个渠道包只需要一次写入
+     */
+    public void writeChanges(FileChannel dst) throws IOException {
+        if (!isInPlace()) {
+            throw new IllegalStateException("channel apk is not in place");
+        }
+        for (Segment segment : mSegments) {
+            if (segment.mBuffer == null) {
+                continue;
+            }
+            ByteBuffer buffer = segment.mBuffer.duplicate();
+            long position = mPrefixLength + segment.mTailOffset;
+            while (buffer.hasRemaining()) {
+                int written = dst.write(buffer, position);
+                ChannelInfoTrace.onWrite(written);
+                position += written;
+            }
+        }
+    }
+
+    /**
+     * 从渠道包的position位置开始读取数据到dst,不需要生成渠道包文件就可以随机读取任意位置。
+     *
+     * @return 读取的字节数,position超出渠道包长度时返回-1
+     */
+    public int read(FileChannel src, long position, ByteBuffer dst) throws IOException {
+        long length = getLength();
+        if (position >= length) {
+            return -1;
+        }
+
+        int start = dst.position();
+        while (dst.hasRemaining() && position < length) {
+            int before = dst.position();
+            if (position < mPrefixLength) {
+                // 开头不变的部分直接从源apk的相同位置读取
+                readSource(src, position, mPrefixLength - position, dst);
+            } else {
+                long tailPosition = position - mPrefixLength;
+                Segment segment = findSegment(tailPosition);
+                long offsetInSegment = tailPosition - segment.mTailOffset;
+                long remaining = segment.mLength - offsetInSegment;
+                if (segment.mBuffer == null) {
+                    readSource(src, segment.mOffset + offsetInSegment, remaining, dst);
+                } else {
+                    ByteBuffer buffer = segment.mBuffer.duplicate();
+                    buffer.position((int) offsetInSegment);
+                    buffer.limit((int) (offsetInSegment + Math.min(remaining, dst.remaining())));
+                    dst.put(buffer);
+                }
+            }
+            position += dst.position() - before;
+        }
+        return dst.position() - start;
+    }
+
+    /**
+     * 把prefix后面的部分读到内存里
+     */
+    public ByteBuffer readTail(FileChannel src) throws IOException {
+        if (mTailLength > Integer.MAX_VALUE) {
+            throw new IOException("tail too large: " + mTailLength);
+        }
+        ByteBuffer tail = ByteBuffer.allocate((int) mTailLength);
+        for (Segment segment : mSegments) {
+            if (segment.mBuffer == null) {
+                ByteBuffer buffer = tail.duplicate();
+                buffer.limit((int) (buffer.position() + segment.mLength));
+                Utils.readFully(src, buffer, segment.mOffset);
+                tail.position(buffer.position());
+            } else {
+                tail.put(segment.mBuffer.duplicate());
+            }
+        }
+        tail.flip();
+        return tail;
+    }
+
+    private Segment findSegment(long tailPosition) {
+        for (Segment segment : mSegments) {
+            if (tailPosition < segment.mTailOffset + segment.mLength) {
+                return segment;
+            }
+        }
+        throw new IllegalStateException("position out of tail: " + tailPosition);
+    }
+
+    private static void readSource(FileChannel src, long position, long length, ByteBuffer dst) throws IOException {
+        ByteBuffer buffer = dst.duplicate();
+        buffer.limit((int) (buffer.position() + Math.min(length, buffer.remaining())));
+        Utils.readFully(src, buffer, position);
+        dst.position(buffer.position());
+    }
+
+    private static class Segment {
+        // 在tail里的位置
+        final long mTailOffset;
+        // 源apk里的位置,新生成的数据为-1
+        final long mOffset;
+        final long mLength;
+        final ByteBuffer mBuffer;
+
+        Segment(long tailOffset, long offset, long length, ByteBuffer buffer) {
+            mTailOffset = tailOffset;
+            mOffset = offset;
+            mLength = length;
+            mBuffer = buffer;
+        }
+    }
+}
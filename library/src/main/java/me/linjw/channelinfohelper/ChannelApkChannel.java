@@ -0,0 +1,102 @@
+package me.linjw.channelinfohelper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * 把"源apk + 渠道信息"当成一个只读的虚拟文件,不需要生成渠道包文件就可以随机读取渠道包的任意位置。
+ * 读取时按位置映射到源apk开头不变的部分、新的APK签名块、central directory或者修改后的eocd,
+ * 一个源apk就可以同时给很多个渠道提供下载。
+ *
+ * 只使用带position的方式读取源apk,多个ChannelApkChannel可以在不同线程里共享同一个源apk的FileChannel。
+ * close的时候不会关闭源apk
+ */
+public class ChannelApkChannel implements SeekableByteChannel {
+    private final FileChannel mSrcChannel;
+    private final ChannelApk mChannelApk;
+    private long mPosition;
+    private volatile boolean mOpen = true;
+
+    public ChannelApkChannel(FileChannel srcChannel, ChannelApk channelApk) {
+        mSrcChannel = srcChannel;
+        mChannelApk = channelApk;
+    }
+
+    /**
+     * 创建写入渠道信息之后的渠道包视图,有APK签名块的时候使用V2的方式,否则使用V1的方式
+     */
+    public static ChannelApkChannel open(ApkLayout srcLayout, FileChannel srcChannel, String channelInfo)
+            throws IOException {
+        return new ChannelApkChannel(srcChannel, ChannelInfoWriter.newChannelApk(srcLayout, channelInfo));
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        int read = mChannelApk.read(mSrcChannel, mPosition, dst);
+        if (read > 0) {
+            mPosition += read;
+        }
+        return read;
+    }
+
+    /**
+     * 从position开始读取,不修改当前的位置
+     */
+    public int read(ByteBuffer dst, long position) throws IOException {
+        ensureOpen();
+        return mChannelApk.read(mSrcChannel, position, dst);
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return mPosition;
+    }
+
+    @Override
+    public ChannelApkChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("negative position " + newPosition);
+        }
+        mPosition = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return mChannelApk.getLength();
+    }
+
+    @Override
+    public ChannelApkChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return mOpen;
+    }
+
+    @Override
+    public void close() {
+        mOpen = false;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!mOpen) {
+            throw new ClosedChannelException();
+        }
+    }
+}
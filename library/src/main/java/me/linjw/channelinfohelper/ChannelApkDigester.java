@@ -0,0 +1,97 @@
+package me.linjw.channelinfohelper;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 计算渠道包的摘要。
+ * 同一个源apk生成的渠道包开头的数据都相同,这部分的摘要只计算一次,
+ * 之后每个渠道包克隆一份摘要的状态,再输入各自不同的那部分数据,
+ * 所以每个渠道包计算摘要的开销只和APK签名块之后的数据大小有关,和apk的大小无关
+ */
+public class ChannelApkDigester {
+    private final String[] mAlgorithms;
+
+    // 源apk开头公共部分的摘要状态,按源apk的路径、大小和修改时间缓存
+    private final SourceCache<Base> mBases = new SourceCache<Base>() {
+        @Override
+        protected Base compute(ApkLayout srcLayout, FileChannel srcChannel) throws IOException {
+            // 不管是V1、V2还是复用padding,渠道包和源apk相同的部分都不会比APK签名块(V1为eocd)的位置短
+            long length = srcLayout.hasSignV2Block() ? srcLayout.getSignV2BlockOffset() : srcLayout.getEocdOffset();
+            MessageDigest[] digests = newDigests();
+            Utils.digest(srcChannel, 0, length, digests);
+            return new Base(length, digests);
+        }
+    };
+
+    /**
+     * @param algorithms 摘要算法,比如"SHA-256"、"MD5"
+     */
+    public ChannelApkDigester(String... algorithms) {
+        mAlgorithms = algorithms.clone();
+        newDigests();
+    }
+
+    public String[] getAlgorithms() {
+        return mAlgorithms.clone();
+    }
+
+    /**
+     * 返回已经输入了源apk前prefixLength个字节的摘要,顺序和算法的顺序一致,每次调用都返回新的一份。
+     * 公共部分在第一次调用的时候计算,其他线程同时调用的话会等待它计算完成。
+     * 通过路径解析的srcLayout即使每次重新解析也只计算一次,见{@link ApkLayout#getSourceKey()}
+     */
+    public MessageDigest[] begin(ApkLayout srcLayout, FileChannel srcChannel, long prefixLength) throws IOException {
+        Base base = mBases.get(srcLayout, srcChannel);
+        long baseLength = base.mLength;
+
+        // 公共部分的摘要计算完之后不再修改,多个线程可以同时克隆
+        MessageDigest[] digests = prefixLength >= baseLength ? copy(base.mDigests) : null;
+        if (digests == null) {
+            digests = newDigests();
+            Utils.digest(srcChannel, 0, prefixLength, digests);
+        } else {
+            Utils.digest(srcChannel, baseLength, prefixLength - baseLength, digests);
+        }
+        return digests;
+    }
+
+    private MessageDigest[] newDigests() {
+        MessageDigest[] digests = new MessageDigest[mAlgorithms.length];
+        for (int i = 0; i < mAlgorithms.length; i++) {
+            try {
+                digests[i] = MessageDigest.getInstance(mAlgorithms[i]);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+        return digests;
+    }
+
+    /**
+     * 克隆摘要的状态,不支持克隆的实现返回null,由调用方重新计算
+     */
+    private static MessageDigest[] copy(MessageDigest[] digests) {
+        MessageDigest[] copy = new MessageDigest[digests.length];
+        try {
+            for (int i = 0; i < digests.length; i++) {
+                copy[i] = (MessageDigest) digests[i].clone();
+            }
+        } catch (CloneNotSupportedException e) {
+            return null;
+        }
+        return copy;
+    }
+
+    private static class Base {
+        final long mLength;
+        final MessageDigest[] mDigests;
+
+        Base(long length, MessageDigest[] digests) {
+            mLength = length;
+            mDigests = digests;
+        }
+    }
+}
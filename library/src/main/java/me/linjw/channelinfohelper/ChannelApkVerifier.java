@@ -0,0 +1,260 @@
+package me.linjw.channelinfohelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 快速检查生成的渠道包结构是否正确。
+ * 只检查写入渠道信息时会修改的部分: eocd、APK签名块、central directory以及渠道信息本身,
+ * 不会读取APK签名块之前的数据,所以耗时和apk的大小无关。
+ * 不能代替apksigner对签名的校验,只用来发现写入过程中出现的问题
+ */
+public class ChannelApkVerifier {
+    // central directory file header的格式:
+    //
+    // central file header signature   4 bytes  (0x02014b50)
+    // ...                             38 bytes
+    // relative offset of local header 4 bytes
+    // file name                       (variable size)
+    // extra field                     (variable size)
+    // file comment                    (variable size)
+    private static final int CD_ENTRY_SIG = 0x02014b50;
+    private static final int CD_ENTRY_MIN_LENGTH = 46;
+    private static final int CD_ENTRY_POSITION_FILE_NAME_LENGTH = 28;
+    private static final int CD_ENTRY_POSITION_EXTRA_LENGTH = 30;
+    private static final int CD_ENTRY_POSITION_COMMENT_LENGTH = 32;
+    private static final int CD_ENTRY_POSITION_LOCAL_HEADER_OFFSET = 42;
+
+    private static final int EOCD_POSITION_ENTRY_COUNT = 10;
+    private static final int EOCD_POSITION_CENTRAL_DIRECTORY_SIZE = 12;
+
+    private static final int MAX_UNSIGNED_SHORT = 0xffff;
+
+    public enum Code {
+        OK,
+        // 找不到eocd,不是zip文件或者eocd的注释长度不对
+        EOCD_NOT_FOUND,
+        // socd offset需要zip64 eocd record,但是没有找到
+        ZIP64_EOCD_NOT_FOUND,
+        // socd offset前面不是APK签名块的魔数
+        SIGN_BLOCK_MAGIC_MISMATCH,
+        // APK签名块开头和结尾的两个大小不一致
+        SIGN_BLOCK_SIZE_MISMATCH,
+        // APK签名块里的键值对长度和APK签名块的大小对不上
+        SIGN_BLOCK_PAIRS_CORRUPTED,
+        // central directory的位置加上大小不等于它后面的数据的位置
+        CENTRAL_DIRECTORY_OFFSET_MISMATCH,
+        // central directory里的条目格式不对、数量不对或者指向了APK签名块之后的位置
+        CENTRAL_DIRECTORY_CORRUPTED,
+        // 读出来的渠道信息和期望的不一致
+        CHANNEL_MISMATCH,
+        IO_ERROR
+    }
+
+    public static class Result {
+        private final Code mCode;
+        private final String mMessage;
+        private final String mChannelInfo;
+
+        Result(Code code, String message, String channelInfo) {
+            mCode = code;
+            mMessage = message;
+            mChannelInfo = channelInfo;
+        }
+
+        public boolean isOk() {
+            return mCode == Code.OK;
+        }
+
+        public Code getCode() {
+            return mCode;
+        }
+
+        public String getMessage() {
+            return mMessage;
+        }
+
+        /**
+         * 从渠道包里读到的渠道信息
+         */
+        public String getChannelInfo() {
+            return mChannelInfo;
+        }
+
+        @Override
+        public String toString() {
+            return mMessage == null ? mCode.name() : mCode + ": " + mMessage;
+        }
+    }
+
+    /**
+     * 检查渠道包的结构,expectedChannelInfo不为null时同时检查读出来的渠道信息
+     */
+    public static Result verify(String apk, String expectedChannelInfo) {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(new File(apk), "r");
+            return verify(file.getChannel(), expectedChannelInfo);
+        } catch (IOException e) {
+            return fail(Code.IO_ERROR, e.toString());
+        } finally {
+            Utils.safeClose(file);
+        }
+    }
+
+    public static Result verify(FileChannel apk, String expectedChannelInfo) {
+        try {
+            return verifyStructure(apk, expectedChannelInfo);
+        } catch (IOException e) {
+            return fail(Code.IO_ERROR, e.toString());
+        }
+    }
+
+    private static Result verifyStructure(FileChannel apk, String expectedChannelInfo) throws IOException {
+        ByteBuffer eocd = Utils.findEocd(apk);
+        if (eocd == null) {
+            return fail(Code.EOCD_NOT_FOUND, null);
+        }
+        long eocdOffset = apk.size() - eocd.capacity();
+
+        // central directory的位置、大小和条目数,zip64格式的话从zip64 eocd record里读取
+        long socdOffset = Utils.getSocdOffset(eocd);
+        long centralDirectorySize = eocd.getInt(EOCD_POSITION_CENTRAL_DIRECTORY_SIZE) & 0xffffffffL;
+        long entryCount = eocd.getShort(EOCD_POSITION_ENTRY_COUNT) & MAX_UNSIGNED_SHORT;
+        long centralDirectoryEnd = eocdOffset;
+        Zip64Eocd zip64Eocd = Zip64Eocd.read(apk, eocdOffset);
+        if (zip64Eocd != null) {
+            socdOffset = zip64Eocd.getSocdOffset();
+            centralDirectorySize = zip64Eocd.getCentralDirectorySize();
+            entryCount = zip64Eocd.getEntryCount();
+            centralDirectoryEnd = zip64Eocd.getRecordOffset();
+        } else if (socdOffset == Zip64Eocd.ZIP64_MAGIC_VALUE) {
+            return fail(Code.ZIP64_EOCD_NOT_FOUND, null);
+        }
+        if (socdOffset < 0 || socdOffset + centralDirectorySize != centralDirectoryEnd) {
+            return fail(Code.CENTRAL_DIRECTORY_OFFSET_MISMATCH, "socd offset " + socdOffset
+                    + " + size " + centralDirectorySize + " != " + centralDirectoryEnd);
+        }
+
+        // 有APK签名块的话检查APK签名块,V1的渠道包可以没有APK签名块。
+        // 本地文件头都应该在APK签名块之前,没有APK签名块的话在central directory之前
+        long localHeadersEnd = socdOffset;
+        int magicNumberSize = Utils.SIG_V2_MAGIC_NUMBER.length();
+        int footerLength = Long.BYTES + magicNumberSize;
+        boolean hasSignV2Block = socdOffset >= footerLength + Long.BYTES
+                && Utils.SIG_V2_MAGIC_NUMBER.equals(Utils.readString(apk, socdOffset - magicNumberSize, magicNumberSize));
+        if (hasSignV2Block) {
+            Result result = verifySignV2Block(apk, socdOffset);
+            if (!result.isOk()) {
+                return result;
+            }
+            localHeadersEnd = socdOffset - Utils.readLong(apk, socdOffset - footerLength) - Long.BYTES;
+        } else if (!isV1(apk)) {
+            return fail(Code.SIGN_BLOCK_MAGIC_MISMATCH, "no magic before socd offset " + socdOffset);
+        }
+
+        Result result = verifyCentralDirectory(apk, socdOffset, centralDirectorySize, entryCount, localHeadersEnd);
+        if (!result.isOk()) {
+            return result;
+        }
+
+        String channelInfo = ChannelInfoParser.getChannelInfo(apk);
+        if (expectedChannelInfo != null && !expectedChannelInfo.equals(channelInfo)) {
+            return new Result(Code.CHANNEL_MISMATCH, "expected " + expectedChannelInfo + " but was " + channelInfo,
+                    channelInfo);
+        }
+        return new Result(Code.OK, null, channelInfo);
+    }
+
+    private static Result verifySignV2Block(FileChannel apk, long socdOffset) throws IOException {
+        // APK签名块结构如下:
+        //
+        // 1. APK签名块大小(不包含自己的8个字节)        8字节
+        // 2. ID-Value键值对                        大小可变
+        // 3. APK签名块大小(和第1部分相等)             8字节
+        // 4. 魔法数(固定为字符串"APK Sig Block 42")  16字节
+        //
+        // 调用前已经确认魔数紧挨着socd offset,也就是eocd里的socd offset刚好指向APK签名块的后面
+        int footerLength = Long.BYTES + Utils.SIG_V2_MAGIC_NUMBER.length();
+        long size = Utils.readLong(apk, socdOffset - footerLength);
+        long blockOffset = socdOffset - size - Long.BYTES;
+        if (size < footerLength || blockOffset < 0) {
+            return fail(Code.SIGN_BLOCK_SIZE_MISMATCH, "invalid size " + size);
+        }
+        long headerSize = Utils.readLong(apk, blockOffset);
+        if (headerSize != size) {
+            return fail(Code.SIGN_BLOCK_SIZE_MISMATCH, "header size " + headerSize + " != footer size " + size);
+        }
+
+        // 键值对应该刚好铺满第1部分和第3部分之间的区域
+        long pairsEnd = socdOffset - footerLength;
+        long position = blockOffset + Long.BYTES;
+        ByteBuffer header = ByteBuffer.allocate(Long.BYTES + Integer.BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        while (position < pairsEnd) {
+            if (pairsEnd - position < header.capacity()) {
+                return fail(Code.SIGN_BLOCK_PAIRS_CORRUPTED, "truncated pair at " + position);
+            }
+            header.clear();
+            Utils.readFully(apk, header, position);
+            long length = header.getLong(0);
+            if (length < Integer.BYTES || length > pairsEnd - position - Long.BYTES) {
+                return fail(Code.SIGN_BLOCK_PAIRS_CORRUPTED, "invalid pair length " + length + " at " + position);
+            }
+            position += Long.BYTES + length;
+        }
+        return new Result(Code.OK, null, null);
+    }
+
+    private static Result verifyCentralDirectory(FileChannel apk, long socdOffset, long size, long entryCount,
+                                                 long localHeadersEnd) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            return fail(Code.CENTRAL_DIRECTORY_CORRUPTED, "central directory too large: " + size);
+        }
+        ByteBuffer centralDirectory = ByteBuffer.allocate((int) size);
+        centralDirectory.order(ByteOrder.LITTLE_ENDIAN);
+        Utils.readFully(apk, centralDirectory, socdOffset);
+
+        // 逐个检查条目,条目数要和eocd里的一致,而且刚好铺满整个central directory
+        int position = 0;
+        long count = 0;
+        while (position < size) {
+            if (size - position < CD_ENTRY_MIN_LENGTH || centralDirectory.getInt(position) != CD_ENTRY_SIG) {
+                return fail(Code.CENTRAL_DIRECTORY_CORRUPTED, "bad entry at " + (socdOffset + position));
+            }
+
+            // 本地文件头应该在APK签名块之前,zip64格式的偏移保存在extra field里,这里不检查
+            long localHeaderOffset = centralDirectory.getInt(position + CD_ENTRY_POSITION_LOCAL_HEADER_OFFSET)
+                    & 0xffffffffL;
+            if (localHeaderOffset != Zip64Eocd.ZIP64_MAGIC_VALUE && localHeaderOffset >= localHeadersEnd) {
+                return fail(Code.CENTRAL_DIRECTORY_CORRUPTED, "local header offset " + localHeaderOffset
+                        + " of entry " + count + " is beyond " + localHeadersEnd);
+            }
+
+            position += CD_ENTRY_MIN_LENGTH
+                    + (centralDirectory.getShort(position + CD_ENTRY_POSITION_FILE_NAME_LENGTH) & MAX_UNSIGNED_SHORT)
+                    + (centralDirectory.getShort(position + CD_ENTRY_POSITION_EXTRA_LENGTH) & MAX_UNSIGNED_SHORT)
+                    + (centralDirectory.getShort(position + CD_ENTRY_POSITION_COMMENT_LENGTH) & MAX_UNSIGNED_SHORT);
+            count++;
+        }
+        if (position != size || count != entryCount) {
+            return fail(Code.CENTRAL_DIRECTORY_CORRUPTED, count + " entries in " + position
+                    + " bytes, expected " + entryCount + " entries in " + size + " bytes");
+        }
+        return new Result(Code.OK, null, null);
+    }
+
+    private static boolean isV1(FileChannel apk) throws IOException {
+        // V1的渠道信息魔数在文件的最后4个字节,V1的渠道包没有APK签名块也是正常的
+        return apk.size() >= Integer.BYTES
+                && Utils.readInt(apk, apk.size() - Integer.BYTES) == Utils.CHANNEL_INFO_SIG;
+    }
+
+    private static Result fail(Code code, String message) {
+        return new Result(code, message, null);
+    }
+}
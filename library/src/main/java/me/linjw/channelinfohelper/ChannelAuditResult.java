@@ -0,0 +1,91 @@
+package me.linjw.channelinfohelper;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * 检查一个apk的结果: 渠道信息、渠道信息的格式和发现的异常,见{@link ChannelAuditScanner}
+ */
+public class ChannelAuditResult {
+    public enum Anomaly {
+        // 找不到eocd,不是zip文件
+        NOT_ZIP,
+        // 读取失败,具体原因见getMessage
+        IO_ERROR,
+        // V1和V2都没有渠道信息
+        NO_CHANNEL,
+        // 渠道信息长度为0
+        EMPTY_CHANNEL,
+        // 同时有V1和V2两种渠道信息,读取时V1优先
+        V1_AND_V2,
+        // V1和V2的渠道信息不一样
+        V1_V2_MISMATCH,
+        // APK签名块里有多个渠道信息键值对,读取时只会用第一个
+        DUPLICATE_CHANNEL,
+        // socd offset前面有APK签名块的魔数,但是APK签名块的大小对不上,或者键值对没有铺满APK签名块
+        SIGN_BLOCK_CORRUPTED,
+        // 有V2/V3签名的apk使用了V1渠道信息,修改zip注释会导致V2/V3签名校验失败
+        V1_CHANNEL_WITH_V2_SIGNATURE,
+        // 有APK签名块但是里面没有V2/V3签名,一般是APK签名块是渠道工具自己加上的
+        NO_V2_SIGNATURE
+    }
+
+    private final String mPath;
+    private final String mChannelInfo;
+    private final int mVersion;
+    private final Set<Anomaly> mAnomalies;
+    private final String mMessage;
+
+    ChannelAuditResult(String path, String channelInfo, int version, Set<Anomaly> anomalies, String message) {
+        mPath = path;
+        mChannelInfo = channelInfo;
+        mVersion = version;
+        mAnomalies = Collections.unmodifiableSet(anomalies);
+        mMessage = message;
+    }
+
+    static ChannelAuditResult fail(String path, Anomaly anomaly, String message) {
+        return new ChannelAuditResult(path, null, ChannelInfoTrace.VERSION_NONE, EnumSet.of(anomaly), message);
+    }
+
+    public String getPath() {
+        return mPath;
+    }
+
+    /**
+     * 读取时实际会得到的渠道信息,没有的话返回null
+     */
+    public String getChannelInfo() {
+        return mChannelInfo;
+    }
+
+    /**
+     * 渠道信息格式: {@link ChannelInfoTrace#VERSION_V1}、{@link ChannelInfoTrace#VERSION_V2}
+     * 或者{@link ChannelInfoTrace#VERSION_NONE}
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    public Set<Anomaly> getAnomalies() {
+        return mAnomalies;
+    }
+
+    public boolean isOk() {
+        return mAnomalies.isEmpty();
+    }
+
+    /**
+     * 异常的补充说明,比如读取失败的原因,没有的话返回null
+     */
+    public String getMessage() {
+        return mMessage;
+    }
+
+    @Override
+    public String toString() {
+        return mPath + " " + mChannelInfo + " V" + mVersion + " " + mAnomalies
+                + (mMessage == null ? "" : " " + mMessage);
+    }
+}
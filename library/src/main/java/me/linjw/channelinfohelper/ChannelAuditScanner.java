@@ -0,0 +1,240 @@
+package me.linjw.channelinfohelper;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并行检查目录下所有apk的渠道信息,用于在服务端确认每个渠道包都带有正确的渠道。
+ * 每个apk只读取文件末尾(V1渠道信息和eocd)以及APK签名块里键值对的头部,
+ * 和{@link ChannelInfoParser}一样不会读取apk的其他内容,所以耗时和apk的大小无关。
+ *
+ * 目录使用ForkJoinPool遍历,每个子目录和每个apk都是一个任务,
+ * 结果在检查完之后立即通过{@link IChannelAuditListener}回调,不需要等整个目录遍历完
+ */
+public class ChannelAuditScanner implements Closeable {
+    private static final String APK_SUFFIX = ".apk";
+
+    // APK签名块里V2和V3签名的ID
+    private static final int SIGNATURE_SCHEME_V2_ID = 0x7109871a;
+    private static final int SIGNATURE_SCHEME_V3_ID = 0xf05368c0;
+
+    private final ForkJoinPool mPool;
+
+    /**
+     * 并行数和cpu核数相同
+     */
+    public ChannelAuditScanner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 检查主要是等待磁盘的小块读取,磁盘延迟比较高(比如网络存储)时可以使用比cpu核数更大的并行数
+     */
+    public ChannelAuditScanner(int parallelism) {
+        mPool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * 递归检查root下所有以.apk结尾的文件,root也可以直接是一个apk。
+     * 阻塞直到全部检查完,每检查完一个apk回调一次listener。
+     * 无法列出内容的目录也会回调一个{@link ChannelAuditResult.Anomaly#IO_ERROR}的结果。
+     * 不会进入指向目录的符号链接,避免循环
+     *
+     * @return 回调的结果数
+     */
+    public int scan(File root, IChannelAuditListener listener) {
+        AtomicInteger count = new AtomicInteger();
+        if (root.isDirectory()) {
+            mPool.invoke(new DirectoryTask(root, listener, count));
+        } else {
+            mPool.invoke(new FileTask(root, listener, count));
+        }
+        return count.get();
+    }
+
+    @Override
+    public void close() {
+        mPool.shutdown();
+    }
+
+    /**
+     * 检查单个apk,不会抛出异常,读取失败时返回{@link ChannelAuditResult.Anomaly#IO_ERROR}。
+     * 解析损坏的apk时抛出的其他运行时异常返回{@link ChannelAuditResult.Anomaly#SIGN_BLOCK_CORRUPTED},
+     * 一个损坏的apk不会中断整个目录的检查
+     */
+    public static ChannelAuditResult audit(String apkPath) {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(new File(apkPath), "r");
+            return audit(file.getChannel(), apkPath);
+        } catch (IOException | UncheckedIOException e) {
+            return ChannelAuditResult.fail(apkPath, ChannelAuditResult.Anomaly.IO_ERROR, e.toString());
+        } catch (RuntimeException e) {
+            return ChannelAuditResult.fail(apkPath, ChannelAuditResult.Anomaly.SIGN_BLOCK_CORRUPTED, e.toString());
+        } finally {
+            Utils.safeClose(file);
+        }
+    }
+
+    /**
+     * 检查已经打开的apk,path只用于填写结果
+     */
+    public static ChannelAuditResult audit(FileChannel apk, String path) throws IOException {
+        long size = apk.size();
+        ByteBuffer tail = ChannelInfoParser.readTail(apk);
+        String channelInfoV1 = ChannelInfoParser.getChannelInfoV1(apk, tail, size);
+
+        ByteBuffer eocd = Utils.findEocd(tail);
+        if (eocd == null && size > tail.capacity()) {
+            eocd = Utils.findEocd(apk);
+        }
+        if (eocd == null) {
+            return ChannelAuditResult.fail(path, ChannelAuditResult.Anomaly.NOT_ZIP, null);
+        }
+
+        // 遍历APK签名块里键值对的头部,只读取渠道信息的Value
+        Set<ChannelAuditResult.Anomaly> anomalies = EnumSet.noneOf(ChannelAuditResult.Anomaly.class);
+        long socdOffset = Utils.getSocdOffset(apk, eocd);
+        SignV2BlockScanner scanner = socdOffset < 0 ? null : SignV2BlockScanner.open(apk, socdOffset);
+        String channelInfoV2 = null;
+        boolean hasSignature = false;
+        if (scanner != null) {
+            long position = scanner.getBlockOffset() + Long.BYTES;
+            int channelCount = 0;
+            for (SignV2BlockScanner.Entry entry : scanner) {
+                int id = entry.getId();
+                if (id == SIGNATURE_SCHEME_V2_ID || id == SIGNATURE_SCHEME_V3_ID) {
+                    hasSignature = true;
+                } else if (id == Utils.CHANNEL_INFO_SIG && channelCount++ == 0) {
+                    channelInfoV2 = scanner.readString(entry);
+                }
+                position = entry.getOffset() + entry.getLength();
+            }
+            if (channelCount > 1) {
+                anomalies.add(ChannelAuditResult.Anomaly.DUPLICATE_CHANNEL);
+            }
+            if (position != scanner.getPairsEnd()) {
+                anomalies.add(ChannelAuditResult.Anomaly.SIGN_BLOCK_CORRUPTED);
+            }
+            if (!hasSignature) {
+                anomalies.add(ChannelAuditResult.Anomaly.NO_V2_SIGNATURE);
+            }
+        } else if (hasSignV2Magic(apk, socdOffset)) {
+            anomalies.add(ChannelAuditResult.Anomaly.SIGN_BLOCK_CORRUPTED);
+        }
+
+        // 和读取时的顺序一致,V1优先
+        String channelInfo = channelInfoV1 != null ? channelInfoV1 : channelInfoV2;
+        int version = channelInfoV1 != null ? ChannelInfoTrace.VERSION_V1
+                : channelInfoV2 != null ? ChannelInfoTrace.VERSION_V2 : ChannelInfoTrace.VERSION_NONE;
+        if (channelInfo == null) {
+            anomalies.add(ChannelAuditResult.Anomaly.NO_CHANNEL);
+        } else if (channelInfo.isEmpty()) {
+            anomalies.add(ChannelAuditResult.Anomaly.EMPTY_CHANNEL);
+        }
+        if (channelInfoV1 != null && channelInfoV2 != null) {
+            anomalies.add(ChannelAuditResult.Anomaly.V1_AND_V2);
+            if (!channelInfoV1.equals(channelInfoV2)) {
+                anomalies.add(ChannelAuditResult.Anomaly.V1_V2_MISMATCH);
+            }
+        }
+        if (channelInfoV1 != null && hasSignature) {
+            anomalies.add(ChannelAuditResult.Anomaly.V1_CHANNEL_WITH_V2_SIGNATURE);
+        }
+        return new ChannelAuditResult(path, channelInfo, version, anomalies, null);
+    }
+
+    private static boolean hasSignV2Magic(FileChannel apk, long socdOffset) throws IOException {
+        int magicNumberSize = Utils.SIG_V2_MAGIC_NUMBER.length();
+        return socdOffset >= magicNumberSize
+                && Utils.SIG_V2_MAGIC_NUMBER.equals(Utils.readString(apk, socdOffset - magicNumberSize, magicNumberSize));
+    }
+
+    private static boolean isApk(File file) {
+        return file.getName().toLowerCase(Locale.ROOT).endsWith(APK_SUFFIX);
+    }
+
+    private static boolean isSymlink(File file) throws IOException {
+        // 不使用java.nio.file,比较父目录的规范路径加上文件名和文件自己的规范路径
+        File parent = file.getParentFile();
+        File resolved = parent == null ? file : new File(parent.getCanonicalFile(), file.getName());
+        return !resolved.getCanonicalFile().equals(resolved.getAbsoluteFile());
+    }
+
+    private static class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final File mDirectory;
+        private final IChannelAuditListener mListener;
+        private final AtomicInteger mCount;
+
+        DirectoryTask(File directory, IChannelAuditListener listener, AtomicInteger count) {
+            mDirectory = directory;
+            mListener = listener;
+            mCount = count;
+        }
+
+        @Override
+        protected void compute() {
+            File[] files = mDirectory.listFiles();
+            if (files == null) {
+                mCount.incrementAndGet();
+                mListener.onResult(ChannelAuditResult.fail(mDirectory.getPath(),
+                        ChannelAuditResult.Anomaly.IO_ERROR, "can't list directory"));
+                return;
+            }
+
+            List<RecursiveAction> tasks = new ArrayList<>();
+            for (File file : files) {
+                try {
+                    if (file.isDirectory()) {
+                        if (!isSymlink(file)) {
+                            tasks.add(new DirectoryTask(file, mListener, mCount));
+                        }
+                    } else if (isApk(file)) {
+                        tasks.add(new FileTask(file, mListener, mCount));
+                    }
+                } catch (IOException e) {
+                    mCount.incrementAndGet();
+                    mListener.onResult(ChannelAuditResult.fail(file.getPath(),
+                            ChannelAuditResult.Anomaly.IO_ERROR, e.toString()));
+                }
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    private static class FileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final File mFile;
+        private final IChannelAuditListener mListener;
+        private final AtomicInteger mCount;
+
+        FileTask(File file, IChannelAuditListener listener, AtomicInteger count) {
+            mFile = file;
+            mListener = listener;
+            mCount = count;
+        }
+
+        @Override
+        protected void compute() {
+            ChannelAuditResult result = audit(mFile.getPath());
+            mCount.incrementAndGet();
+            mListener.onResult(result);
+        }
+    }
+}
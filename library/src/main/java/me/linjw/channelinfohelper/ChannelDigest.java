@@ -0,0 +1,48 @@
+package me.linjw.channelinfohelper;
+
+import java.util.Arrays;
+
+/**
+ * 一个渠道包的大小和摘要,见{@link ChannelDigestWriter}
+ */
+public class ChannelDigest {
+    private final String mChannelInfo;
+    private final long mLength;
+    private final String[] mAlgorithms;
+    private final byte[][] mDigests;
+
+    ChannelDigest(String channelInfo, long length, String[] algorithms, byte[][] digests) {
+        mChannelInfo = channelInfo;
+        mLength = length;
+        mAlgorithms = algorithms;
+        mDigests = digests;
+    }
+
+    public String getChannelInfo() {
+        return mChannelInfo;
+    }
+
+    public long getLength() {
+        return mLength;
+    }
+
+    /**
+     * @return 对应算法的摘要,没有计算这个算法的话返回null
+     */
+    public byte[] getDigest(String algorithm) {
+        for (int i = 0; i < mAlgorithms.length; i++) {
+            if (mAlgorithms[i].equalsIgnoreCase(algorithm)) {
+                return Arrays.copyOf(mDigests[i], mDigests[i].length);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 小写十六进制的摘要,没有计算这个算法的话返回null
+     */
+    public String getHexDigest(String algorithm) {
+        byte[] digest = getDigest(algorithm);
+        return digest == null ? null : Utils.toHex(digest);
+    }
+}
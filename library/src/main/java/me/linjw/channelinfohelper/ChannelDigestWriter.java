@@ -0,0 +1,120 @@
+package me.linjw.channelinfohelper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+
+/**
+ * 生成渠道包的同时计算它的摘要,不需要生成之后再把每个渠道包完整读一遍。
+ * 写入方式和{@link ChannelInfoWriter}相同,源apk开头的公共部分只计算一次摘要,见{@link ChannelApkDigester}。
+ * 每个渠道包写完之后通过{@link IChannelDigestListener}回调摘要
+ */
+public class ChannelDigestWriter implements IChannelInfoWriter {
+    private final ICopyEngine mCopyEngine;
+    private final boolean mReusePadding;
+    private final ChannelApkDigester mDigester;
+    private final IChannelDigestListener mListener;
+
+    /**
+     * @param algorithms 摘要算法,比如"SHA-256"、"MD5"
+     */
+    public ChannelDigestWriter(IChannelDigestListener listener, String... algorithms) {
+        this(new TransferCopyEngine(), false, listener, algorithms);
+    }
+
+    /**
+     * reusePadding见{@link ChannelInfoWriterV2#ChannelInfoWriterV2(ICopyEngine, boolean)}
+     */
+    public ChannelDigestWriter(ICopyEngine copyEngine, boolean reusePadding, IChannelDigestListener listener,
+                               String... algorithms) {
+        mCopyEngine = copyEngine;
+        mReusePadding = reusePadding;
+        mDigester = new ChannelApkDigester(algorithms);
+        mListener = listener;
+    }
+
+    @Override
+    public boolean addChannelInfo(String srcApk, String outputApk, String channelInfo) {
+        RandomAccessFile zipFile = null;
+        FileChannel srcChannel = null;
+        try {
+            File srcFile = new File(srcApk);
+            zipFile = new RandomAccessFile(srcFile, "r");
+            srcChannel = zipFile.getChannel();
+
+            ApkLayout layout = ApkLayout.parse(zipFile, srcFile);
+            if (layout == null) {
+                return false;
+            }
+            return addChannelInfo(layout, srcChannel, outputApk, channelInfo);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            Utils.safeClose(srcChannel, zipFile);
+        }
+    }
+
+    @Override
+    public boolean addChannelInfo(ApkLayout srcLayout, FileChannel srcChannel, String outputApk, String channelInfo) {
+        FileOutputStream fos = null;
+        FileChannel dstChannel = null;
+        try {
+            fos = new FileOutputStream(outputApk);
+            dstChannel = fos.getChannel();
+            write(srcLayout, srcChannel, dstChannel, outputApk, channelInfo);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            Utils.safeClose(dstChannel, fos);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean addChannelInfo(ApkLayout srcLayout, FileChannel srcChannel, WritableByteChannel output,
+                                  String channelInfo) {
+        try {
+            write(srcLayout, srcChannel, output, null, channelInfo);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+        return true;
+    }
+
+    private void write(ApkLayout srcLayout, FileChannel srcChannel, WritableByteChannel output, String outputApk,
+                       String channelInfo) throws Exception {
+        boolean success = false;
+        ChannelInfoTrace.begin(ChannelInfoTrace.Kind.WRITE, outputApk);
+        try {
+            long begin = ChannelInfoTrace.beginPhase();
+            ChannelApk channelApk = ChannelInfoWriter.newChannelApk(srcLayout, ChannelInfo.compile(channelInfo),
+                    mReusePadding, BlockBuffers.obtain());
+            ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.BUILD_TAIL, begin);
+
+            MessageDigest[] digests = mDigester.begin(srcLayout, srcChannel, channelApk.getPrefixLength());
+            channelApk.writeTo(srcChannel, output, mCopyEngine, digests);
+            // 没有渠道信息时原样输出源apk,和ChannelInfoWriter一样记为V2
+            boolean v2 = channelInfo == null || channelInfo.isEmpty() || srcLayout.hasSignV2Block();
+            ChannelInfoTrace.onVersion(v2 ? ChannelInfoTrace.VERSION_V2 : ChannelInfoTrace.VERSION_V1);
+            success = true;
+
+            byte[][] results = new byte[digests.length][];
+            for (int i = 0; i < digests.length; i++) {
+                results[i] = digests[i].digest();
+            }
+            mListener.onDigest(outputApk, new ChannelDigest(channelInfo, channelApk.getLength(),
+                    mDigester.getAlgorithms(), results));
+        } catch (Exception e) {
+            ChannelInfoTrace.onFailure(e);
+            throw e;
+        } finally {
+            ChannelInfoTrace.end(success);
+        }
+    }
+}
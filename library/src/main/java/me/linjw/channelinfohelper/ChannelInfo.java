@@ -0,0 +1,74 @@
+package me.linjw.channelinfohelper;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 预先编码好的渠道信息。
+ * 渠道信息统一使用UTF-8编码,和读取时的解码一致,不受系统默认编码的影响。
+ * 编码和长度检查只在创建的时候做一次,批量生成时同一个渠道写多个源apk可以重复使用同一个实例
+ */
+public final class ChannelInfo {
+    // V1的渠道信息长度保存在一个short里,读取时小于等于0的长度会被当作没有渠道信息
+    public static final int MAX_V1_LENGTH = Short.MAX_VALUE;
+
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    private final String mValue;
+    private final byte[] mBytes;
+
+    private ChannelInfo(String value, byte[] bytes) {
+        mValue = value;
+        mBytes = bytes;
+    }
+
+    /**
+     * channelInfo为null时和空字符串一样,表示没有渠道信息
+     */
+    public static ChannelInfo compile(String channelInfo) {
+        if (channelInfo == null || channelInfo.isEmpty()) {
+            return new ChannelInfo(channelInfo, EMPTY_BYTES);
+        }
+        return new ChannelInfo(channelInfo, channelInfo.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 创建时传入的渠道信息
+     */
+    public String getValue() {
+        return mValue;
+    }
+
+    public boolean isEmpty() {
+        return mBytes.length == 0;
+    }
+
+    /**
+     * UTF-8编码之后的字节数
+     */
+    public int length() {
+        return mBytes.length;
+    }
+
+    /**
+     * 是否可以用V1的方式写入。写入时还需要和zip注释原有的长度一起检查,见{@link ChannelInfoWriterV1}
+     */
+    public boolean fitsV1() {
+        return mBytes.length <= MAX_V1_LENGTH;
+    }
+
+    public byte[] getBytes() {
+        return mBytes.clone();
+    }
+
+    /**
+     * 编码之后的数据,直接返回内部的数组,库内部使用,不能修改
+     */
+    byte[] bytes() {
+        return mBytes;
+    }
+
+    @Override
+    public String toString() {
+        return mValue;
+    }
+}
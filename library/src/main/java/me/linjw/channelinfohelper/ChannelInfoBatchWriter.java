@@ -0,0 +1,63 @@
+package me.linjw.channelinfohelper;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 用同一个源apk批量生成渠道包。
+ * 源apk只会打开和解析一次,解析得到的{@link ApkLayout}在所有渠道包之间共享
+ */
+public class ChannelInfoBatchWriter {
+    private final IChannelInfoWriter mWriter;
+
+    public ChannelInfoBatchWriter() {
+        this(new ChannelInfoWriter());
+    }
+
+    public ChannelInfoBatchWriter(IChannelInfoWriter writer) {
+        mWriter = writer;
+    }
+
+    /**
+     * @return 写入失败的任务,全部成功时返回空列表
+     */
+    public List<ChannelTask> addChannelInfo(String srcApk, List<ChannelTask> tasks) {
+        return addChannelInfo(srcApk, tasks.iterator());
+    }
+
+    /**
+     * @return 写入失败的任务,全部成功时返回空列表
+     */
+    public List<ChannelTask> addChannelInfo(String srcApk, Iterator<ChannelTask> tasks) {
+        List<ChannelTask> failed = new ArrayList<>();
+        RandomAccessFile zipFile = null;
+        FileChannel srcChannel = null;
+        ApkLayout layout = null;
+        try {
+            File srcFile = new File(srcApk);
+            zipFile = new RandomAccessFile(srcFile, "r");
+            srcChannel = zipFile.getChannel();
+            layout = ApkLayout.parse(zipFile, srcFile);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        try {
+            while (tasks.hasNext()) {
+                ChannelTask task = tasks.next();
+                // 源apk解析失败的话所有任务都算失败
+                if (layout == null
+                        || !mWriter.addChannelInfo(layout, srcChannel, task.getOutputApk(), task.getChannelInfo())) {
+                    failed.add(task);
+                }
+            }
+        } finally {
+            Utils.safeClose(srcChannel, zipFile);
+        }
+        return failed;
+    }
+}
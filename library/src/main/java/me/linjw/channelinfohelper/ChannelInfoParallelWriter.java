@@ -0,0 +1,207 @@
+package me.linjw.channelinfohelper;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并行生成渠道包。
+ * 源apk只解析一次,所有任务共享同一个源文件的FileChannel(只使用带position的读取,可以并发),
+ * 工作线程数和同时打开的输出文件数分开限制,避免磁盘被过多的并发写入拖慢
+ */
+public class ChannelInfoParallelWriter implements Closeable {
+    private final ExecutorService mExecutor;
+    private final boolean mOwnExecutor;
+    private final Semaphore mOpenFiles;
+    private final IChannelInfoWriter mWriter;
+
+    /**
+     * 使用固定数量的普通线程
+     */
+    public ChannelInfoParallelWriter(int threads, int maxOpenFiles) {
+        this(threads, maxOpenFiles, new ChannelInfoWriter());
+    }
+
+    public ChannelInfoParallelWriter(int threads, int maxOpenFiles, IChannelInfoWriter writer) {
+        this(Executors.newFixedThreadPool(threads, new WriterThreadFactory()), true, maxOpenFiles, writer);
+    }
+
+    /**
+     * 使用调用方提供的线程池,例如在JDK 21上可以传入Executors.newVirtualThreadPerTaskExecutor()。
+     * 线程池的生命周期由调用方管理
+     */
+    public ChannelInfoParallelWriter(ExecutorService executor, int maxOpenFiles) {
+        this(executor, maxOpenFiles, new ChannelInfoWriter());
+    }
+
+    public ChannelInfoParallelWriter(ExecutorService executor, int maxOpenFiles, IChannelInfoWriter writer) {
+        this(executor, false, maxOpenFiles, writer);
+    }
+
+    private ChannelInfoParallelWriter(ExecutorService executor, boolean ownExecutor,
+                                      int maxOpenFiles, IChannelInfoWriter writer) {
+        mExecutor = executor;
+        mOwnExecutor = ownExecutor;
+        mOpenFiles = new Semaphore(maxOpenFiles);
+        mWriter = writer;
+    }
+
+    /**
+     * 提交所有任务后立即返回,每个任务对应一个Future。
+     * 写入成功时Future返回对应的任务,失败时Future.get()抛出ExecutionException。
+     * Future.cancel不会中断已经开始写入的任务,
+     * 调用方提供的线程池也不能使用shutdownNow中断工作线程,否则共享的源文件会被关闭,其他任务都会失败
+     */
+    public List<Future<ChannelTask>> addChannelInfo(String srcApk, List<ChannelTask> tasks) throws IOException {
+        File srcFile = new File(srcApk);
+        final RandomAccessFile zipFile = new RandomAccessFile(srcFile, "r");
+        final FileChannel srcChannel = zipFile.getChannel();
+        final ApkLayout layout;
+        try {
+            layout = ApkLayout.parse(zipFile, srcFile);
+        } catch (IOException e) {
+            Utils.safeClose(srcChannel, zipFile);
+            throw e;
+        }
+        if (layout == null || tasks.isEmpty()) {
+            Utils.safeClose(srcChannel, zipFile);
+            if (layout == null) {
+                throw new IOException("can't find eocd in " + srcApk);
+            }
+            return new ArrayList<>();
+        }
+
+        // 每个任务结束(包括没有运行就被取消)的时候释放一次,最后一个释放的负责关闭源文件
+        final SharedSource source = new SharedSource(zipFile, srcChannel, tasks.size());
+        List<WriteTask> writeTasks = new ArrayList<>(tasks.size());
+        for (final ChannelTask task : tasks) {
+            writeTasks.add(new WriteTask(new Callable<ChannelTask>() {
+                @Override
+                public ChannelTask call() throws Exception {
+                    mOpenFiles.acquire();
+                    try {
+                        if (!mWriter.addChannelInfo(layout, srcChannel,
+                                task.getOutputApk(), task.getChannelInfo())) {
+                            throw new IOException("add channel info failed: " + task.getOutputApk());
+                        }
+                    } finally {
+                        mOpenFiles.release();
+                    }
+                    return task;
+                }
+            }, source));
+        }
+
+        List<Future<ChannelTask>> futures = new ArrayList<>(writeTasks.size());
+        for (int i = 0; i < writeTasks.size(); i++) {
+            try {
+                mExecutor.execute(writeTasks.get(i));
+            } catch (RuntimeException e) {
+                // 线程池拒绝的话取消还没有提交的任务,已经提交的任务照常执行,源文件在它们都结束之后关闭
+                for (int j = i; j < writeTasks.size(); j++) {
+                    writeTasks.get(j).cancel(false);
+                }
+                throw e;
+            }
+            futures.add(writeTasks.get(i));
+        }
+        return futures;
+    }
+
+    @Override
+    public void close() {
+        if (mOwnExecutor) {
+            mExecutor.shutdown();
+        }
+    }
+
+    /**
+     * 所有任务共享的源文件
+     */
+    private static class SharedSource {
+        private final RandomAccessFile mZipFile;
+        private final FileChannel mChannel;
+        private final AtomicInteger mPending;
+
+        SharedSource(RandomAccessFile zipFile, FileChannel channel, int pending) {
+            mZipFile = zipFile;
+            mChannel = channel;
+            mPending = new AtomicInteger(pending);
+        }
+
+        void release() {
+            if (mPending.decrementAndGet() == 0) {
+                Utils.safeClose(mChannel, mZipFile);
+            }
+        }
+    }
+
+    /**
+     * 中断正在读取FileChannel的线程会把FileChannel关掉,而源文件的FileChannel是所有任务共享的,
+     * 所以{@link #cancel}不会中断正在运行的任务,只会取消还没有开始的任务。
+     *
+     * 取消正在运行的任务时done()会马上回调,这时候任务还在读取源文件,
+     * 所以开始运行的任务在run()结束时释放源文件,没有开始运行的任务在done()里释放
+     */
+    private static class WriteTask extends FutureTask<ChannelTask> {
+        private static final int STATE_NEW = 0;
+        private static final int STATE_RUNNING = 1;
+        private static final int STATE_RELEASED = 2;
+
+        private final SharedSource mSource;
+        private final AtomicInteger mState = new AtomicInteger(STATE_NEW);
+
+        WriteTask(Callable<ChannelTask> callable, SharedSource source) {
+            super(callable);
+            mSource = source;
+        }
+
+        @Override
+        public void run() {
+            if (!mState.compareAndSet(STATE_NEW, STATE_RUNNING)) {
+                return;
+            }
+            try {
+                super.run();
+            } finally {
+                mState.set(STATE_RELEASED);
+                mSource.release();
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return super.cancel(false);
+        }
+
+        @Override
+        protected void done() {
+            if (mState.compareAndSet(STATE_NEW, STATE_RELEASED)) {
+                mSource.release();
+            }
+        }
+    }
+
+    private static class WriterThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "channel-writer-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
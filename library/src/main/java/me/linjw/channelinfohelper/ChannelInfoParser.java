@@ -0,0 +1,165 @@
+package me.linjw.channelinfohelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 从apk文件中解析渠道信息,不依赖android,服务端和app都可以使用。
+ * 只从文件末尾读一次数据,同时用来判断V1的渠道信息魔数和查找eocd,
+ * 然后再按需读取APK签名块里键值对的头部
+ */
+public class ChannelInfoParser {
+    // 绝大多数apk的注释为空或者很短,读一页大小的数据就能同时覆盖V1的渠道信息和eocd
+    private static final int TAIL_LENGTH = 4096;
+
+    // V1渠道信息块结尾的[渠道信息长度]和[魔数]
+    private static final int V1_TRAILER_LENGTH = Short.BYTES + Integer.BYTES;
+
+    /**
+     * 根据路径读取任意apk的渠道信息,没有渠道信息的话返回null。
+     * 需要同时知道渠道信息格式或者检查异常的话使用{@link ChannelAuditScanner#audit(String)}
+     */
+    public static String getChannelInfo(String apkPath) throws IOException {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(new File(apkPath), "r");
+            return getChannelInfo(file.getChannel());
+        } finally {
+            Utils.safeClose(file);
+        }
+    }
+
+    /**
+     * 读取V1或V2格式的渠道信息,没有渠道信息的话返回null
+     */
+    public static String getChannelInfo(FileChannel apk) throws IOException {
+        String channelInfo = null;
+        ChannelInfoTrace.begin(ChannelInfoTrace.Kind.READ, null);
+        try {
+            channelInfo = readChannelInfo(apk);
+            return channelInfo;
+        } catch (IOException e) {
+            ChannelInfoTrace.onFailure(e);
+            throw e;
+        } finally {
+            ChannelInfoTrace.end(channelInfo != null);
+        }
+    }
+
+    private static String readChannelInfo(FileChannel apk) throws IOException {
+        long size = apk.size();
+        ByteBuffer tail = readTail(apk);
+        int length = tail.capacity();
+
+        // V1: 渠道信息块在zip注释的最后,魔数在文件的最后4个字节
+        String channelInfo = getChannelInfoV1(apk, tail, size);
+        if (channelInfo != null) {
+            ChannelInfoTrace.onVersion(ChannelInfoTrace.VERSION_V1);
+            return channelInfo;
+        }
+
+        // V2: 先在读到的数据里查找eocd,注释太长找不到的话再按最大长度去查找
+        long begin = ChannelInfoTrace.beginPhase();
+        ByteBuffer eocd = Utils.findEocd(tail);
+        if (eocd == null && size > length) {
+            eocd = Utils.findEocd(apk);
+        }
+        if (eocd == null) {
+            ChannelInfoTrace.onFailure("eocd not found", null);
+            return null;
+        }
+        long socdOffset = Utils.getSocdOffset(apk, eocd);
+        ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.FIND_EOCD, begin);
+        return getChannelInfoV2(apk, socdOffset);
+    }
+
+    /**
+     * 读取文件末尾最多TAIL_LENGTH个字节
+     */
+    static ByteBuffer readTail(FileChannel apk) throws IOException {
+        long size = apk.size();
+        int length = (int) Math.min(TAIL_LENGTH, size);
+        ByteBuffer tail = ByteBuffer.allocate(length);
+        tail.order(ByteOrder.LITTLE_ENDIAN);
+        Utils.readFully(apk, tail, size - length);
+        return tail;
+    }
+
+    /**
+     * 从{@link #readTail}读到的数据里解析V1的渠道信息,没有的话返回null
+     */
+    static String getChannelInfoV1(FileChannel apk, ByteBuffer tail, long size) throws IOException {
+        int length = tail.capacity();
+        if (length < V1_TRAILER_LENGTH || tail.getInt(length - Integer.BYTES) != Utils.CHANNEL_INFO_SIG) {
+            return null;
+        }
+
+        short infoLength = tail.getShort(length - V1_TRAILER_LENGTH);
+        if (infoLength <= 0) {
+            return null;
+        }
+
+        // 渠道信息一般都在已经读到的数据里,超出的话再单独读取
+        int infoPosition = length - V1_TRAILER_LENGTH - infoLength;
+        ByteBuffer info;
+        if (infoPosition >= 0) {
+            info = tail.duplicate();
+            info.position(infoPosition);
+        } else {
+            info = ByteBuffer.allocate(infoLength);
+            Utils.readFully(apk, info, size - V1_TRAILER_LENGTH - infoLength);
+            info.flip();
+        }
+        return Utils.readString(info, infoLength);
+    }
+
+    private static String getChannelInfoV2(FileChannel apk, long socdOffset) throws IOException {
+        // 只读取APK签名块里键值对的头部,找到渠道信息之后再读取它的内容
+        long begin = ChannelInfoTrace.beginPhase();
+        SignV2BlockScanner scanner = SignV2BlockScanner.open(apk, socdOffset);
+        ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.READ_SIGN_BLOCK, begin);
+        if (scanner == null) {
+            ChannelInfoTrace.onFailure("no channel info", null);
+            return null;
+        }
+
+        begin = ChannelInfoTrace.beginPhase();
+        SignV2BlockScanner.Entry entry = scanner.find(Utils.CHANNEL_INFO_SIG);
+        if (entry == null) {
+            ChannelInfoTrace.onFailure("no channel info", null);
+            return null;
+        }
+        String channelInfo = scanner.readString(entry);
+        ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.READ_CHANNEL_INFO, begin);
+        ChannelInfoTrace.onVersion(ChannelInfoTrace.VERSION_V2);
+        return channelInfo;
+    }
+
+    /**
+     * 读取多键值对组成的渠道信息,没有的话返回null
+     */
+    public static ChannelPayload getChannelPayload(FileChannel apk) throws IOException {
+        // 查找eocd
+        ByteBuffer eocd = Utils.findEocd(apk);
+        if (eocd == null) {
+            return null;
+        }
+
+        // 定位APK签名块
+        SignV2BlockScanner scanner = SignV2BlockScanner.open(apk, Utils.getSocdOffset(apk, eocd));
+        if (scanner == null) {
+            return null;
+        }
+
+        // 只读取ID-Value键值对的头部查找ChannelPayload,找到之后一次读出整个ChannelPayload
+        SignV2BlockScanner.Entry entry = scanner.find(Utils.CHANNEL_PAYLOAD_SIG);
+        if (entry == null) {
+            return null;
+        }
+        return ChannelPayload.parse(scanner.readValue(entry));
+    }
+}
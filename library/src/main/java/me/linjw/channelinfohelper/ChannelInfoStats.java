@@ -0,0 +1,191 @@
+package me.linjw.channelinfohelper;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 默认的{@link IChannelInfoListener}实现,汇总一批读写的统计数据,
+ * 可以按读写类型获取总耗时和各个阶段耗时的百分位数,用于上报监控和发现性能回退
+ */
+public class ChannelInfoStats implements IChannelInfoListener {
+    private static final int KINDS = ChannelInfoTrace.Kind.values().length;
+    private static final int PHASES = ChannelInfoTrace.Phase.values().length;
+
+    private final Samples[] mTotal = new Samples[KINDS];
+    private final Samples[][] mPhases = new Samples[KINDS][PHASES];
+    private final long[] mCount = new long[KINDS];
+    private final long[] mFailed = new long[KINDS];
+    private final long[] mBytesRead = new long[KINDS];
+    private final long[] mBytesWritten = new long[KINDS];
+    private final long[] mSyscalls = new long[KINDS];
+    private final long[][] mVersions = new long[KINDS][ChannelInfoTrace.VERSION_V2 + 1];
+    private final Map<String, Long> mFailureCauses = new TreeMap<>();
+
+    public ChannelInfoStats() {
+        for (int kind = 0; kind < KINDS; kind++) {
+            mTotal[kind] = new Samples();
+            for (int phase = 0; phase < PHASES; phase++) {
+                mPhases[kind][phase] = new Samples();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onTrace(ChannelInfoTrace trace) {
+        int kind = trace.getKind().ordinal();
+        mCount[kind]++;
+        mTotal[kind].add(trace.getTotalNanos());
+        for (ChannelInfoTrace.Phase phase : ChannelInfoTrace.Phase.values()) {
+            long nanos = trace.getPhaseNanos(phase);
+            if (nanos > 0) {
+                mPhases[kind][phase.ordinal()].add(nanos);
+            }
+        }
+        mBytesRead[kind] += trace.getBytesRead();
+        mBytesWritten[kind] += trace.getBytesWritten();
+        mSyscalls[kind] += trace.getSyscalls();
+        mVersions[kind][trace.getVersion()]++;
+
+        if (!trace.isSuccess()) {
+            mFailed[kind]++;
+            String cause = trace.getFailureCause() == null ? "unknown" : trace.getFailureCause();
+            Long count = mFailureCauses.get(cause);
+            mFailureCauses.put(cause, count == null ? 1 : count + 1);
+        }
+    }
+
+    public synchronized void reset() {
+        for (int kind = 0; kind < KINDS; kind++) {
+            mTotal[kind].clear();
+            for (Samples samples : mPhases[kind]) {
+                samples.clear();
+            }
+            mCount[kind] = 0;
+            mFailed[kind] = 0;
+            mBytesRead[kind] = 0;
+            mBytesWritten[kind] = 0;
+            mSyscalls[kind] = 0;
+            Arrays.fill(mVersions[kind], 0);
+        }
+        mFailureCauses.clear();
+    }
+
+    public synchronized long getCount(ChannelInfoTrace.Kind kind) {
+        return mCount[kind.ordinal()];
+    }
+
+    public synchronized long getFailed(ChannelInfoTrace.Kind kind) {
+        return mFailed[kind.ordinal()];
+    }
+
+    public synchronized long getBytesRead(ChannelInfoTrace.Kind kind) {
+        return mBytesRead[kind.ordinal()];
+    }
+
+    public synchronized long getBytesWritten(ChannelInfoTrace.Kind kind) {
+        return mBytesWritten[kind.ordinal()];
+    }
+
+    public synchronized long getSyscalls(ChannelInfoTrace.Kind kind) {
+        return mSyscalls[kind.ordinal()];
+    }
+
+    /**
+     * 匹配到指定格式的次数,version为{@link ChannelInfoTrace#VERSION_V1}等
+     */
+    public synchronized long getVersionCount(ChannelInfoTrace.Kind kind, int version) {
+        return mVersions[kind.ordinal()][version];
+    }
+
+    /**
+     * 各个失败原因出现的次数
+     */
+    public synchronized Map<String, Long> getFailureCauses() {
+        return new TreeMap<>(mFailureCauses);
+    }
+
+    /**
+     * 总耗时的百分位数,percentile取值0~100,没有数据的话返回0
+     */
+    public synchronized long getPercentileNanos(ChannelInfoTrace.Kind kind, double percentile) {
+        return mTotal[kind.ordinal()].percentile(percentile);
+    }
+
+    /**
+     * 某个阶段耗时的百分位数,只统计经过了这个阶段的读写
+     */
+    public synchronized long getPercentileNanos(ChannelInfoTrace.Kind kind, ChannelInfoTrace.Phase phase,
+                                                double percentile) {
+        return mPhases[kind.ordinal()][phase.ordinal()].percentile(percentile);
+    }
+
+    /**
+     * 每行一项的文本报告,方便直接输出或者上报
+     */
+    public synchronized String report() {
+        StringBuilder builder = new StringBuilder();
+        for (ChannelInfoTrace.Kind kind : ChannelInfoTrace.Kind.values()) {
+            int k = kind.ordinal();
+            if (mCount[k] == 0) {
+                continue;
+            }
+            builder.append(String.format(Locale.US,
+                    "%s count=%d failed=%d v1=%d v2=%d read=%d written=%d syscalls=%d %s%n",
+                    kind, mCount[k], mFailed[k],
+                    mVersions[k][ChannelInfoTrace.VERSION_V1], mVersions[k][ChannelInfoTrace.VERSION_V2],
+                    mBytesRead[k], mBytesWritten[k], mSyscalls[k], mTotal[k].summary()));
+            for (ChannelInfoTrace.Phase phase : ChannelInfoTrace.Phase.values()) {
+                Samples samples = mPhases[k][phase.ordinal()];
+                if (samples.size() > 0) {
+                    builder.append(String.format(Locale.US, "%s %s %s%n", kind, phase, samples.summary()));
+                }
+            }
+        }
+        for (Map.Entry<String, Long> entry : mFailureCauses.entrySet()) {
+            builder.append(String.format(Locale.US, "FAILURE %s %d%n", entry.getKey(), entry.getValue()));
+        }
+        return builder.toString();
+    }
+
+    private static class Samples {
+        private long[] mValues = new long[64];
+        private int mSize;
+        private boolean mSorted = true;
+
+        void add(long value) {
+            if (mSize == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mSize * 2);
+            }
+            mValues[mSize++] = value;
+            mSorted = false;
+        }
+
+        void clear() {
+            mSize = 0;
+            mSorted = true;
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        long percentile(double percentile) {
+            if (mSize == 0) {
+                return 0;
+            }
+            if (!mSorted) {
+                Arrays.sort(mValues, 0, mSize);
+                mSorted = true;
+            }
+            int index = (int) Math.ceil(percentile / 100 * mSize) - 1;
+            return mValues[Math.max(0, Math.min(index, mSize - 1))];
+        }
+
+        String summary() {
+            return String.format(Locale.US, "p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms",
+                    percentile(50) / 1e6, percentile(90) / 1e6, percentile(99) / 1e6, percentile(100) / 1e6);
+        }
+    }
+}
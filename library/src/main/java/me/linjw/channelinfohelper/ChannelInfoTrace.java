@@ -0,0 +1,239 @@
+package me.linjw.channelinfohelper;
+
+/**
+ * 一次读取或者写入渠道信息的统计数据: 各个阶段的耗时、读写的字节数、读写调用的次数、
+ * 匹配的渠道信息格式以及失败原因。
+ *
+ * 统计数据跟着线程走,读写的代码只需要调用这里的静态方法上报,不需要层层传递。
+ * 嵌套的读写(比如{@link ChannelInfoWriter}先尝试V2再尝试V1)只算一次,在最外层结束的时候回调listener。
+ * 没有设置listener的时候所有的静态方法都直接返回,不会有额外的开销
+ */
+public class ChannelInfoTrace {
+    public enum Kind {
+        READ,
+        WRITE
+    }
+
+    public enum Phase {
+        // 查找eocd和zip64 eocd
+        FIND_EOCD,
+        // 定位和读取APK签名块
+        READ_SIGN_BLOCK,
+        // 在内存里生成新的APK签名块或者eocd
+        BUILD_TAIL,
+        // 拷贝APK签名块(V1为eocd)之前没有修改的数据
+        COPY_PREFIX,
+        // 拷贝central directory
+        COPY_CENTRAL_DIRECTORY,
+        // 写入新生成的APK签名块和eocd
+        WRITE_TAIL,
+        // 读取渠道信息的内容
+        READ_CHANNEL_INFO
+    }
+
+    public static final int VERSION_NONE = 0;
+    public static final int VERSION_V1 = 1;
+    public static final int VERSION_V2 = 2;
+
+    private static volatile IChannelInfoListener sListener;
+    private static final ThreadLocal<ChannelInfoTrace> sCurrent = new ThreadLocal<>();
+
+    private final Kind mKind;
+    private final String mTarget;
+    private final long mStartNanos;
+    private final long[] mPhaseNanos = new long[Phase.values().length];
+    private int mDepth;
+    private long mTotalNanos;
+    private long mBytesRead;
+    private long mBytesWritten;
+    private long mSyscalls;
+    private int mVersion = VERSION_NONE;
+    private boolean mSuccess;
+    private String mFailureCause;
+    private Throwable mFailure;
+
+    private ChannelInfoTrace(Kind kind, String target) {
+        mKind = kind;
+        mTarget = target;
+        mStartNanos = System.nanoTime();
+    }
+
+    /**
+     * 设置进程内全局的listener,传入null时关闭统计
+     */
+    public static void setListener(IChannelInfoListener listener) {
+        sListener = listener;
+    }
+
+    /**
+     * 开始一次读取或者写入,必须和{@link #end}成对调用
+     */
+    public static void begin(Kind kind, String target) {
+        if (sListener == null) {
+            return;
+        }
+        ChannelInfoTrace trace = sCurrent.get();
+        if (trace == null) {
+            trace = new ChannelInfoTrace(kind, target);
+            sCurrent.set(trace);
+        }
+        trace.mDepth++;
+    }
+
+    /**
+     * 结束一次读取或者写入,最外层结束的时候回调listener
+     */
+    public static void end(boolean success) {
+        ChannelInfoTrace trace = sCurrent.get();
+        if (trace == null) {
+            return;
+        }
+        trace.mSuccess = success;
+        if (--trace.mDepth > 0) {
+            return;
+        }
+        sCurrent.remove();
+        trace.mTotalNanos = System.nanoTime() - trace.mStartNanos;
+
+        IChannelInfoListener listener = sListener;
+        if (listener != null) {
+            listener.onTrace(trace);
+        }
+    }
+
+    /**
+     * 开始一个阶段,返回值传给{@link #endPhase}
+     */
+    public static long beginPhase() {
+        return sListener == null || sCurrent.get() == null ? 0 : System.nanoTime();
+    }
+
+    public static void endPhase(Phase phase, long begin) {
+        if (begin == 0) {
+            return;
+        }
+        ChannelInfoTrace trace = sCurrent.get();
+        if (trace != null) {
+            trace.mPhaseNanos[phase.ordinal()] += System.nanoTime() - begin;
+        }
+    }
+
+    /**
+     * 记录一次读取调用
+     */
+    public static void onRead(long bytes) {
+        ChannelInfoTrace trace = current();
+        if (trace != null) {
+            trace.mSyscalls++;
+            trace.mBytesRead += Math.max(bytes, 0);
+        }
+    }
+
+    /**
+     * 记录一次写入调用
+     */
+    public static void onWrite(long bytes) {
+        ChannelInfoTrace trace = current();
+        if (trace != null) {
+            trace.mSyscalls++;
+            trace.mBytesWritten += Math.max(bytes, 0);
+        }
+    }
+
+    /**
+     * 记录一次直接在内核里拷贝的调用,比如transferTo
+     */
+    public static void onTransfer(long bytes) {
+        ChannelInfoTrace trace = current();
+        if (trace != null) {
+            trace.mSyscalls++;
+            trace.mBytesRead += Math.max(bytes, 0);
+            trace.mBytesWritten += Math.max(bytes, 0);
+        }
+    }
+
+    /**
+     * 记录匹配的渠道信息格式
+     */
+    public static void onVersion(int version) {
+        ChannelInfoTrace trace = current();
+        if (trace != null) {
+            trace.mVersion = version;
+        }
+    }
+
+    /**
+     * 记录失败原因,只有最终失败的时候才有意义,重新尝试成功的话会被忽略
+     */
+    public static void onFailure(String cause, Throwable failure) {
+        ChannelInfoTrace trace = current();
+        if (trace != null) {
+            trace.mFailureCause = cause;
+            trace.mFailure = failure;
+        }
+    }
+
+    public static void onFailure(Throwable failure) {
+        onFailure(failure.getClass().getSimpleName(), failure);
+    }
+
+    private static ChannelInfoTrace current() {
+        return sListener == null ? null : sCurrent.get();
+    }
+
+    public Kind getKind() {
+        return mKind;
+    }
+
+    /**
+     * 读写的apk路径,写到流的时候为null
+     */
+    public String getTarget() {
+        return mTarget;
+    }
+
+    public long getPhaseNanos(Phase phase) {
+        return mPhaseNanos[phase.ordinal()];
+    }
+
+    public long getTotalNanos() {
+        return mTotalNanos;
+    }
+
+    public long getBytesRead() {
+        return mBytesRead;
+    }
+
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    /**
+     * 读写调用的次数,每次read、write或者transferTo算一次
+     */
+    public long getSyscalls() {
+        return mSyscalls;
+    }
+
+    /**
+     * 匹配的渠道信息格式: {@link #VERSION_V1}、{@link #VERSION_V2}或者{@link #VERSION_NONE}
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    public boolean isSuccess() {
+        return mSuccess;
+    }
+
+    /**
+     * 失败原因,成功的话返回null
+     */
+    public String getFailureCause() {
+        return mSuccess ? null : mFailureCause;
+    }
+
+    public Throwable getFailure() {
+        return mSuccess ? null : mFailure;
+    }
+}
@@ -0,0 +1,171 @@
+package me.linjw.channelinfohelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+public class ChannelInfoWriter implements IChannelInfoWriter {
+    private final ChannelInfoWriterV2 mWriterV2;
+    private final ChannelInfoWriterV1 mWriterV1;
+    private final ICopyEngine mCopyEngine;
+    private final boolean mReusePadding;
+
+    public ChannelInfoWriter() {
+        this(new TransferCopyEngine());
+    }
+
+    public ChannelInfoWriter(ICopyEngine copyEngine) {
+        this(copyEngine, false);
+    }
+
+    /**
+     * reusePadding见{@link ChannelInfoWriterV2#ChannelInfoWriterV2(ICopyEngine, boolean)}
+     */
+    public ChannelInfoWriter(ICopyEngine copyEngine, boolean reusePadding) {
+        mWriterV2 = new ChannelInfoWriterV2(copyEngine, reusePadding);
+        mWriterV1 = new ChannelInfoWriterV1(copyEngine);
+        mCopyEngine = copyEngine;
+        mReusePadding = reusePadding;
+    }
+
+    @Override
+    public boolean addChannelInfo(String srcApk, String outputApk, String channelInfo) {
+        // 先尝试V2再尝试V1,只统计为一次写入
+        boolean success = false;
+        ChannelInfoTrace.begin(ChannelInfoTrace.Kind.WRITE, outputApk);
+        try {
+            success = mWriterV2.addChannelInfo(srcApk, outputApk, channelInfo)
+                    || mWriterV1.addChannelInfo(srcApk, outputApk, channelInfo);
+            return success;
+        } finally {
+            ChannelInfoTrace.end(success);
+        }
+    }
+
+    @Override
+    public boolean addChannelInfo(ApkLayout srcLayout, FileChannel srcChannel, String outputApk, String channelInfo) {
+        return addChannelInfo(srcLayout, srcChannel, outputApk, ChannelInfo.compile(channelInfo));
+    }
+
+    /**
+     * 写入预先编码好的渠道信息,见{@link ChannelInfo}
+     */
+    public boolean addChannelInfo(ApkLayout srcLayout, FileChannel srcChannel, String outputApk,
+                                  ChannelInfo channelInfo) {
+        // 先尝试V2再尝试V1,只统计为一次写入
+        boolean success = false;
+        ChannelInfoTrace.begin(ChannelInfoTrace.Kind.WRITE, outputApk);
+        try {
+            success = mWriterV2.addChannelInfo(srcLayout, srcChannel, outputApk, channelInfo)
+                    || mWriterV1.addChannelInfo(srcLayout, srcChannel, outputApk, channelInfo);
+            return success;
+        } finally {
+            ChannelInfoTrace.end(success);
+        }
+    }
+
+    @Override
+    public boolean addChannelInfo(ApkLayout srcLayout, FileChannel srcChannel, WritableByteChannel output,
+                                  String channelInfo) {
+        return addChannelInfo(srcLayout, srcChannel, output, ChannelInfo.compile(channelInfo));
+    }
+
+    /**
+     * 输出到流的时候不能像写文件那样V2失败之后再用V1重写一遍,output里可能已经有了一部分数据。
+     * 所以只在生成渠道包结构的时候选择V2或者V1,一旦开始写入,失败就直接返回false,不会再尝试V1
+     */
+    public boolean addChannelInfo(ApkLayout srcLayout, FileChannel srcChannel, WritableByteChannel output,
+                                  ChannelInfo channelInfo) {
+        boolean success = false;
+        ChannelInfoTrace.begin(ChannelInfoTrace.Kind.WRITE, null);
+        try {
+            // 和ChannelInfoWriterV2一样,没有渠道信息时原样输出源apk
+            long begin = ChannelInfoTrace.beginPhase();
+            BlockBuffers buffers = BlockBuffers.obtain();
+            int version = ChannelInfoTrace.VERSION_V2;
+            ChannelApk channelApk = channelInfo.isEmpty()
+                    ? new ChannelApk(srcLayout.getApkLength())
+                    : ChannelInfoWriterV2.newChannelApk(srcLayout, Utils.CHANNEL_INFO_SIG, channelInfo.bytes(),
+                    mReusePadding, buffers);
+            if (channelApk == null) {
+                version = ChannelInfoTrace.VERSION_V1;
+                channelApk = ChannelInfoWriterV1.newChannelApk(srcLayout, channelInfo, buffers);
+            }
+            ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.BUILD_TAIL, begin);
+            channelApk.writeTo(srcChannel, output, mCopyEngine);
+            ChannelInfoTrace.onVersion(version);
+            success = true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            ChannelInfoTrace.onFailure(e);
+            return false;
+        } finally {
+            ChannelInfoTrace.end(success);
+        }
+        return true;
+    }
+
+    /**
+     * 计算写入渠道信息之后的渠道包结构,有APK签名块的时候使用V2的方式,否则使用V1的方式。
+     * 没有渠道信息时返回和源apk完全一样的结构,不会往V2签名的apk里追加V1的空渠道信息破坏签名
+     */
+    static ChannelApk newChannelApk(ApkLayout srcLayout, String channelInfo) throws IOException {
+        return newChannelApk(srcLayout, ChannelInfo.compile(channelInfo), false, BlockBuffers.HEAP);
+    }
+
+    /**
+     * reusePadding见{@link ChannelInfoWriterV2#ChannelInfoWriterV2(ICopyEngine, boolean)},buffers见{@link BlockBuffers}
+     */
+    static ChannelApk newChannelApk(ApkLayout srcLayout, ChannelInfo channelInfo, boolean reusePadding,
+                                    BlockBuffers buffers) throws IOException {
+        if (channelInfo.isEmpty()) {
+            return new ChannelApk(srcLayout.getApkLength());
+        }
+        ChannelApk channelApk = ChannelInfoWriterV2.newChannelApk(srcLayout, Utils.CHANNEL_INFO_SIG,
+                channelInfo.bytes(), reusePadding, buffers);
+        if (channelApk == null) {
+            channelApk = ChannelInfoWriterV1.newChannelApk(srcLayout, channelInfo, buffers);
+        }
+        return channelApk;
+    }
+
+    /**
+     * 把渠道包直接写到output,比如socket或者上传对象存储的流,不需要先生成临时文件。
+     * output为FileChannel或者SocketChannel时源apk不变的部分会使用transferTo零拷贝
+     */
+    public boolean addChannelInfo(String srcApk, WritableByteChannel output, String channelInfo) {
+        RandomAccessFile zipFile = null;
+        FileChannel srcChannel = null;
+        boolean success = false;
+        ChannelInfoTrace.begin(ChannelInfoTrace.Kind.WRITE, null);
+        try {
+            File srcFile = new File(srcApk);
+            zipFile = new RandomAccessFile(srcFile, "r");
+            srcChannel = zipFile.getChannel();
+
+            ApkLayout layout = ApkLayout.parse(zipFile, srcFile);
+            if (layout == null) {
+                return false;
+            }
+            success = addChannelInfo(layout, srcChannel, output, channelInfo);
+            return success;
+        } catch (Exception e) {
+            e.printStackTrace();
+            ChannelInfoTrace.onFailure(e);
+            return false;
+        } finally {
+            Utils.safeClose(srcChannel, zipFile);
+            ChannelInfoTrace.end(success);
+        }
+    }
+
+    /**
+     * 把渠道包直接写到output,不会关闭output
+     */
+    public boolean addChannelInfo(String srcApk, OutputStream output, String channelInfo) {
+        return addChannelInfo(srcApk, Utils.toChannel(output), channelInfo);
+    }
+}
@@ -0,0 +1,175 @@
+package me.linjw.channelinfohelper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+public class ChannelInfoWriterV1 implements IChannelInfoWriter {
+    private final ICopyEngine mCopyEngine;
+
+    public ChannelInfoWriterV1() {
+        this(new TransferCopyEngine());
+    }
+
+    public ChannelInfoWriterV1(ICopyEngine copyEngine) {
+        mCopyEngine = copyEngine;
+    }
+
+    @Override
+    public boolean addChannelInfo(String srcApk, String outputApk, String channelInfo) {
+        RandomAccessFile zipFile = null;
+        FileChannel srcChannel = null;
+        boolean success = false;
+        ChannelInfoTrace.begin(ChannelInfoTrace.Kind.WRITE, outputApk);
+        try {
+            File srcFile = new File(srcApk);
+            zipFile = new RandomAccessFile(srcFile, "r");
+            srcChannel = zipFile.getChannel();
+
+            ApkLayout layout = ApkLayout.parse(zipFile, srcFile);
+            if (layout == null) {
+                return false;
+            }
+            success = addChannelInfo(layout, srcChannel, outputApk, channelInfo);
+            return success;
+        } catch (Exception e) {
+            e.printStackTrace();
+            ChannelInfoTrace.onFailure(e);
+            return false;
+        } finally {
+            Utils.safeClose(srcChannel, zipFile);
+            ChannelInfoTrace.end(success);
+        }
+    }
+
+    @Override
+    public boolean addChannelInfo(ApkLayout srcLayout, FileChannel srcChannel, String outputApk, String channelInfo) {
+        return addChannelInfo(srcLayout, srcChannel, outputApk, ChannelInfo.compile(channelInfo));
+    }
+
+    /**
+     * 写入预先编码好的渠道信息,见{@link ChannelInfo}
+     */
+    public boolean addChannelInfo(ApkLayout srcLayout, FileChannel srcChannel, String outputApk,
+                                  ChannelInfo channelInfo) {
+        FileOutputStream fos = null;
+        FileChannel dstChannel = null;
+        boolean success = false;
+        ChannelInfoTrace.begin(ChannelInfoTrace.Kind.WRITE, outputApk);
+        try {
+            long begin = ChannelInfoTrace.beginPhase();
+            ChannelApk channelApk = newChannelApk(srcLayout, channelInfo, BlockBuffers.obtain());
+            ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.BUILD_TAIL, begin);
+
+            fos = new FileOutputStream(outputApk);
+            dstChannel = fos.getChannel();
+            channelApk.writeTo(srcChannel, dstChannel, mCopyEngine);
+            ChannelInfoTrace.onVersion(ChannelInfoTrace.VERSION_V1);
+            success = true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            ChannelInfoTrace.onFailure(e);
+            return false;
+        } finally {
+            Utils.safeClose(dstChannel, fos);
+            ChannelInfoTrace.end(success);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean addChannelInfo(ApkLayout srcLayout, FileChannel srcChannel, WritableByteChannel output,
+                                  String channelInfo) {
+        return addChannelInfo(srcLayout, srcChannel, output, ChannelInfo.compile(channelInfo));
+    }
+
+    public boolean addChannelInfo(ApkLayout srcLayout, FileChannel srcChannel, WritableByteChannel output,
+                                  ChannelInfo channelInfo) {
+        boolean success = false;
+        ChannelInfoTrace.begin(ChannelInfoTrace.Kind.WRITE, null);
+        try {
+            long begin = ChannelInfoTrace.beginPhase();
+            ChannelApk channelApk = newChannelApk(srcLayout, channelInfo, BlockBuffers.obtain());
+            ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.BUILD_TAIL, begin);
+            channelApk.writeTo(srcChannel, output, mCopyEngine);
+            ChannelInfoTrace.onVersion(ChannelInfoTrace.VERSION_V1);
+            success = true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            ChannelInfoTrace.onFailure(e);
+            return false;
+        } finally {
+            ChannelInfoTrace.end(success);
+        }
+        return true;
+    }
+
+    /**
+     * 计算往eocd的注释里插入渠道信息之后的渠道包结构,渠道信息太长、zip注释放不下的话抛出IOException
+     */
+    static ChannelApk newChannelApk(ApkLayout srcLayout, ChannelInfo channelInfo, BlockBuffers buffers)
+            throws IOException {
+        // 往eocd插入渠道信息得到新的eocd,eocd前面的数据是没有改到的,直接拷贝就好
+        ByteBuffer newEocd = addChannelInfo(srcLayout.getEocd(buffers), channelInfo, buffers);
+        return new ChannelApk(srcLayout.getEocdOffset()).appendBuffer(newEocd);
+    }
+
+    private static ByteBuffer addChannelInfo(ByteBuffer eocd, ChannelInfo channelInfo, BlockBuffers buffers)
+            throws IOException {
+        // end of central directory record 的格式如下:
+        //
+        // end of central dir signature                                                    4 bytes  (0x06054b50)
+        // number of this disk                                                             2 bytes
+        // number of the disk with the start of the central directory                      2 bytes
+        // total number of entries in the central directory on this disk                   2 bytes
+        // total number of entries in the central directory                                2 bytes
+        // size of the central directory                                                   4 bytes
+        // offset of start of central directory with respect to the starting disk number   4 bytes
+        // .ZIP file comment length                                                        2 bytes
+        // .ZIP file comment                                                               (variable size)
+        //
+        // 我们可以在.ZIP file comment里面插入渠道信息块:
+        //
+        // 渠道信息      大小记录在[渠道信息长度]中
+        // 渠道信息长度  2字节
+        // 魔数         4字节
+        //
+        // 魔数放在最后面方便我们读取判断是否有渠道信息
+
+        // 渠道信息长度保存在short里,加上原有的注释也不能超过注释长度的最大值0xffff
+        int commentLength = eocd.capacity() - Utils.EOCD_MIN_LENGTH;
+        int channelBlockSize = channelInfo.length() // 渠道信息
+                + Short.BYTES                        // 渠道信息长度
+                + Integer.BYTES;                     // 渠道信息魔数
+        if (!channelInfo.fitsV1()
+                || commentLength + channelBlockSize > Utils.EOCD_MAX_LENGTH - Utils.EOCD_MIN_LENGTH) {
+            throw new IOException("channel info too long for V1: " + channelInfo.length() + " bytes");
+        }
+        short infoLength = (short) channelInfo.length();
+        ByteBuffer buffer = buffers.allocate(eocd.capacity() + channelBlockSize);
+
+        // eocd前面部分的数据我们没有改动,直接拷贝就好
+        byte[] bytes = new byte[Utils.EOCD_MIN_LENGTH - Utils.EOCD_SIZE_OF_COMMENT_LENGTH];
+        eocd.get(bytes);
+        buffer.put(bytes);
+
+        // 由于插入了渠道信息块,zip包的注释长度需要相应的增加
+        buffer.putShort((short) (eocd.getShort() + channelBlockSize));
+
+        // 拷贝原本的zip包注释
+        eocd.position(Utils.EOCD_MIN_LENGTH);
+        buffer.put(eocd);
+
+        // 插入渠道包信息块
+        buffer.put(channelInfo.bytes());        // 渠道信息
+        buffer.putShort(infoLength);            // 渠道信息长度
+        buffer.putInt(Utils.CHANNEL_INFO_SIG);  // 魔数
+
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,542 @@
+package me.linjw.channelinfohelper;
+
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+public class ChannelInfoWriterV2 implements IChannelInfoWriter {
+    private final ICopyEngine mCopyEngine;
+    private final boolean mReusePadding;
+
+    public ChannelInfoWriterV2() {
+        this(new TransferCopyEngine());
+    }
+
+    public ChannelInfoWriterV2(ICopyEngine copyEngine) {
+        this(copyEngine, false);
+    }
+
+    /**
+     * reusePadding为true时优先把渠道信息放到APK签名块的verity padding里,
+     * APK签名块的大小和central directory的位置都不变,渠道包和源apk只有一小段数据不同。
+     * 没有padding或者放不下的时候仍然使用追加键值对的方式
+     */
+    public ChannelInfoWriterV2(ICopyEngine copyEngine, boolean reusePadding) {
+        mCopyEngine = copyEngine;
+        mReusePadding = reusePadding;
+    }
+
+    @Override
+    public boolean addChannelInfo(String srcApk, String outputApk, String channelInfo) {
+        // [APK签名块]插入在[central directory]之前,而[central directory]的起始位置可以在[EOCD]的socdOffset部分读取
+        // 我们在[APK签名块]里面插入渠道信息,会影响到[central directory]的位置,
+        // 所以需要同步修改[EOCD]里面的socdOffset
+        //
+        // [zip包其余内容](不变)          ...
+        //
+        //                              1. APK签名块大小(不包含自己的8个字节)        8字节
+        // [APK签名块](需要插入渠道信息)   2. ID-Value键值对                        大小可变
+        //                              3. APK签名块大小(和第1部分相等)             8字节
+        //                              4. 魔法数(固定为字符串"APK Sig Block 42")  16字节
+        //                                      <--------------------------
+        // [central directory](不变)    ...                                |
+        //                                                                 |
+        //                              end of central dir signature       |
+        //                              ...                                |
+        // [EOCD](需要修改socdOffset)    socdOffset  ------------------------
+        //                              ...
+        //
+
+        if (channelInfo == null || channelInfo.isEmpty()) {
+            return true;
+        }
+
+        RandomAccessFile zipFile = null;
+        FileChannel srcChannel = null;
+        boolean success = false;
+        ChannelInfoTrace.begin(ChannelInfoTrace.Kind.WRITE, outputApk);
+        try {
+            File srcFile = new File(srcApk);
+            zipFile = new RandomAccessFile(srcFile, "r");
+            srcChannel = zipFile.getChannel();
+
+            ApkLayout layout = ApkLayout.parse(zipFile, srcFile);
+            if (layout == null) {
+                return false;
+            }
+            success = addChannelInfo(layout, srcChannel, outputApk, channelInfo);
+            return success;
+        } catch (Exception e) {
+            e.printStackTrace();
+            ChannelInfoTrace.onFailure(e);
+            return false;
+        } finally {
+            Utils.safeClose(srcChannel, zipFile);
+            ChannelInfoTrace.end(success);
+        }
+    }
+
+    @Override
+    public boolean addChannelInfo(ApkLayout srcLayout, FileChannel srcChannel, String outputApk, String channelInfo) {
+        return addChannelInfo(srcLayout, srcChannel, outputApk, ChannelInfo.compile(channelInfo));
+    }
+
+    /**
+     * 写入预先编码好的渠道信息,见{@link ChannelInfo}
+     */
+    public boolean addChannelInfo(ApkLayout srcLayout, FileChannel srcChannel, String outputApk,
+                                  ChannelInfo channelInfo) {
+        if (channelInfo.isEmpty()) {
+            return true;
+        }
+        return addIdValue(srcLayout, srcChannel, outputApk, Utils.CHANNEL_INFO_SIG, channelInfo.bytes());
+    }
+
+    @Override
+    public boolean addChannelInfo(ApkLayout srcLayout, FileChannel srcChannel, WritableByteChannel output,
+                                  String channelInfo) {
+        return addChannelInfo(srcLayout, srcChannel, output, ChannelInfo.compile(channelInfo));
+    }
+
+    public boolean addChannelInfo(ApkLayout srcLayout, FileChannel srcChannel, WritableByteChannel output,
+                                  ChannelInfo channelInfo) {
+        boolean success = false;
+        ChannelInfoTrace.begin(ChannelInfoTrace.Kind.WRITE, null);
+        try {
+            // 输出到流的时候调用方需要拿到完整的apk,所以没有渠道信息时原样输出源apk
+            long begin = ChannelInfoTrace.beginPhase();
+            ChannelApk channelApk = channelInfo.isEmpty()
+                    ? new ChannelApk(srcLayout.getApkLength())
+                    : newChannelApk(srcLayout, Utils.CHANNEL_INFO_SIG, channelInfo.bytes(), mReusePadding,
+                    BlockBuffers.obtain());
+            ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.BUILD_TAIL, begin);
+            if (channelApk == null) {
+                ChannelInfoTrace.onFailure("no signing block", null);
+                return false;
+            }
+            channelApk.writeTo(srcChannel, output, mCopyEngine);
+            ChannelInfoTrace.onVersion(ChannelInfoTrace.VERSION_V2);
+            success = true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            ChannelInfoTrace.onFailure(e);
+            return false;
+        } finally {
+            ChannelInfoTrace.end(success);
+        }
+        return true;
+    }
+
+    /**
+     * 写入多个键值对组成的渠道信息,读取时使用{@link ChannelPayloadReader}
+     */
+    public boolean addChannelPayload(String srcApk, String outputApk, ChannelPayload payload) {
+        RandomAccessFile zipFile = null;
+        FileChannel srcChannel = null;
+        try {
+            File srcFile = new File(srcApk);
+            zipFile = new RandomAccessFile(srcFile, "r");
+            srcChannel = zipFile.getChannel();
+
+            ApkLayout layout = ApkLayout.parse(zipFile, srcFile);
+            if (layout == null) {
+                return false;
+            }
+            return addChannelPayload(layout, srcChannel, outputApk, payload);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            Utils.safeClose(srcChannel, zipFile);
+        }
+    }
+
+    public boolean addChannelPayload(ApkLayout srcLayout, FileChannel srcChannel, String outputApk,
+                                     ChannelPayload payload) {
+        ByteBuffer buffer = payload.toByteBuffer();
+        byte[] value = new byte[buffer.remaining()];
+        buffer.get(value);
+        return addIdValue(srcLayout, srcChannel, outputApk, Utils.CHANNEL_PAYLOAD_SIG, value);
+    }
+
+    private boolean addIdValue(ApkLayout srcLayout, FileChannel srcChannel, String outputApk, int id, byte[] value) {
+        FileOutputStream fos = null;
+        FileChannel dstChannel = null;
+        boolean success = false;
+        ChannelInfoTrace.begin(ChannelInfoTrace.Kind.WRITE, outputApk);
+        try {
+            // 没有APK签名块,不能用V2的方式写入
+            if (!srcLayout.hasSignV2Block()) {
+                ChannelInfoTrace.onFailure("no signing block", null);
+                return false;
+            }
+
+            long begin = ChannelInfoTrace.beginPhase();
+            ChannelApk channelApk = newChannelApk(srcLayout, id, value, mReusePadding, BlockBuffers.obtain());
+            ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.BUILD_TAIL, begin);
+
+            fos = new FileOutputStream(outputApk);
+            dstChannel = fos.getChannel();
+            channelApk.writeTo(srcChannel, dstChannel, mCopyEngine);
+            ChannelInfoTrace.onVersion(ChannelInfoTrace.VERSION_V2);
+            success = true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            ChannelInfoTrace.onFailure(e);
+            return false;
+        } finally {
+            Utils.safeClose(dstChannel, fos);
+            ChannelInfoTrace.end(success);
+        }
+        return true;
+    }
+
+    /**
+     * reusePadding为true时优先使用{@link #newChannelApkInPadding},放不下的话再追加键值对。
+     * 新的APK签名块从buffers分配,见{@link BlockBuffers}
+     */
+    static ChannelApk newChannelApk(ApkLayout srcLayout, int id, byte[] value, boolean reusePadding,
+                                    BlockBuffers buffers) throws IOException {
+        if (reusePadding) {
+            ChannelApk channelApk = newChannelApkInPadding(srcLayout, id, value, buffers);
+            if (channelApk != null) {
+                return channelApk;
+            }
+        }
+        return newChannelApk(srcLayout, id, value, buffers);
+    }
+
+    /**
+     * 计算往APK签名块插入键值对之后的渠道包结构,没有APK签名块的话返回null
+     */
+    static ChannelApk newChannelApk(ApkLayout srcLayout, int id, byte[] value, BlockBuffers buffers)
+            throws IOException {
+        if (!srcLayout.hasSignV2Block()) {
+            return null;
+        }
+
+        long socdOffset = srcLayout.getSocdOffset();
+
+        // 往APK签名块插入渠道信息,得到新的APK签名块
+        ByteBuffer newSignV2Block = addIdValue(srcLayout.getSignV2Block(), id, value, buffers);
+
+        // 由于APK签名块在socd offset的前面,而我们又在APK签名块里面插入了渠道信息,
+        // 所以socd offset应该再往后移动插入的渠道信息键值对的大小:
+        // 键值对长度(8字节)、ID长度(4字节)、渠道信息长度。
+        // zip64格式的话zip64 eocd record和locator也要一起修改
+        long newSocdOffset = socdOffset + Long.BYTES + Integer.BYTES + value.length;
+        ByteBuffer tail = srcLayout.getTail(newSocdOffset, buffers);
+
+        // APK签名块前的数据是没有改过的,可以直接拷贝。
+        // 往后依次是新的APK签名块、没有修改的[central directory]以及修改后的eocd
+        return new ChannelApk(srcLayout.getSignV2BlockOffset())
+                .appendBuffer(newSignV2Block)
+                .appendSource(socdOffset, srcLayout.getCentralDirectoryEnd() - socdOffset)
+                .appendBuffer(tail);
+    }
+
+    /**
+     * 把键值对放到APK签名块的verity padding里,APK签名块的大小不变,central directory也不需要移动。
+     * 渠道包只有APK签名块里的一段数据和源apk不同,见{@link ChannelApk#isInPlace}。
+     * value为null时只去掉id对应的键值对,空出来的位置还给padding。
+     * 没有APK签名块、没有padding或者放不下的话返回null
+     */
+    static ChannelApk newChannelApkInPadding(ApkLayout srcLayout, int id, byte[] value, BlockBuffers buffers) {
+        if (!srcLayout.hasSignV2Block()) {
+            return null;
+        }
+        ByteBuffer signV2Block = srcLayout.getSignV2Block();
+        ByteBuffer newSignV2Block = replaceIdValueInPadding(signV2Block, id, value, buffers);
+        if (newSignV2Block == null) {
+            return null;
+        }
+
+        // 找出和原来的APK签名块不同的那一段,前后相同的部分都直接使用源apk的数据
+        int capacity = newSignV2Block.capacity();
+        int start = 0;
+        while (start < capacity && signV2Block.get(start) == newSignV2Block.get(start)) {
+            start++;
+        }
+        int end = capacity;
+        while (end > start && signV2Block.get(end - 1) == newSignV2Block.get(end - 1)) {
+            end--;
+        }
+        ByteBuffer changed = newSignV2Block.duplicate();
+        changed.limit(end);
+        changed.position(start);
+
+        long blockOffset = srcLayout.getSignV2BlockOffset();
+        return new ChannelApk(blockOffset + start)
+                .appendBuffer(changed)
+                .appendSource(blockOffset + end, srcLayout.getApkLength() - blockOffset - end);
+    }
+
+    /**
+     * 计算写入渠道信息之后的渠道包结构,渠道信息为空或者没有APK签名块的话返回null
+     */
+    static ChannelApk newChannelApk(ApkLayout srcLayout, ChannelInfo channelInfo, BlockBuffers buffers)
+            throws IOException {
+        if (channelInfo.isEmpty()) {
+            return null;
+        }
+        return newChannelApk(srcLayout, Utils.CHANNEL_INFO_SIG, channelInfo.bytes(), buffers);
+    }
+
+    /**
+     * 直接修改已经生成的apk里的渠道信息。
+     * 只重写APK签名块及其之后的数据,APK签名块之前的内容保持不动,
+     * 所以耗时只和central directory的大小有关,和apk的大小无关
+     */
+    public boolean rewriteChannelInfo(String apk, String channelInfo) {
+        RandomAccessFile zipFile = null;
+        boolean success = false;
+        ChannelInfoTrace.begin(ChannelInfoTrace.Kind.WRITE, apk);
+        try {
+            zipFile = new RandomAccessFile(new File(apk), "rw");
+
+            ApkLayout layout = ApkLayout.parse(zipFile);
+            if (layout == null) {
+                return false;
+            }
+            if (!layout.hasSignV2Block()) {
+                ChannelInfoTrace.onFailure("no signing block", null);
+                return false;
+            }
+
+            // APK签名块里有足够大的padding的话只需要覆盖其中的一小段,文件大小也不会变
+            ChannelInfo compiled = ChannelInfo.compile(channelInfo);
+            byte[] value = compiled.isEmpty() ? null : compiled.bytes();
+            BlockBuffers buffers = BlockBuffers.obtain();
+            if (mReusePadding) {
+                long begin = ChannelInfoTrace.beginPhase();
+                ChannelApk channelApk = newChannelApkInPadding(layout, Utils.CHANNEL_INFO_SIG, value, buffers);
+                ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.BUILD_TAIL, begin);
+                if (channelApk != null) {
+                    begin = ChannelInfoTrace.beginPhase();
+                    channelApk.writeChanges(zipFile.getChannel());
+                    ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.WRITE_TAIL, begin);
+                    ChannelInfoTrace.onVersion(ChannelInfoTrace.VERSION_V2);
+                    success = true;
+                    return true;
+                }
+            }
+
+            // 先去掉旧的渠道信息键值对,再插入新的渠道信息
+            long begin = ChannelInfoTrace.beginPhase();
+            ByteBuffer newSignV2Block = removeIdValue(layout.getSignV2Block(), Utils.CHANNEL_INFO_SIG);
+            if (value != null) {
+                newSignV2Block = addIdValue(newSignV2Block, Utils.CHANNEL_INFO_SIG, value, buffers);
+            }
+
+            // 读出central directory,它会跟着APK签名块的大小变化而前后移动
+            long socdOffset = layout.getSocdOffset();
+            long centralDirectorySize = layout.getCentralDirectoryEnd() - socdOffset;
+            if (centralDirectorySize > Integer.MAX_VALUE) {
+                throw new IOException("central directory too large: " + centralDirectorySize);
+            }
+            ByteBuffer centralDirectory = ByteBuffer.allocate((int) centralDirectorySize);
+            Utils.readFully(zipFile.getChannel(), centralDirectory, socdOffset);
+            centralDirectory.flip();
+
+            // 修改eocd中的socd
+            long signV2BlockOffset = layout.getSignV2BlockOffset();
+            long newSocdOffset = signV2BlockOffset + newSignV2Block.capacity();
+            ByteBuffer eocd = layout.getTail(newSocdOffset, buffers);
+            ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.BUILD_TAIL, begin);
+
+            // 从APK签名块的位置开始依次写入新的APK签名块、central directory和eocd
+            begin = ChannelInfoTrace.beginPhase();
+            FileChannel channel = zipFile.getChannel();
+            long position = signV2BlockOffset;
+            position += writeFully(channel, newSignV2Block, position);
+            position += writeFully(channel, centralDirectory, position);
+            position += writeFully(channel, eocd, position);
+
+            // 文件变短的话需要截掉后面多余的数据
+            zipFile.setLength(position);
+            ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.WRITE_TAIL, begin);
+            ChannelInfoTrace.onVersion(ChannelInfoTrace.VERSION_V2);
+            success = true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            ChannelInfoTrace.onFailure(e);
+            return false;
+        } finally {
+            Utils.safeClose(zipFile);
+            ChannelInfoTrace.end(success);
+        }
+        return true;
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            int written = channel.write(buffer, position);
+            ChannelInfoTrace.onWrite(written);
+            position += written;
+        }
+        return length;
+    }
+
+    /**
+     * 键值对的长度不合法时抛出IOException,不会改动原来的apk
+     */
+    private static ByteBuffer removeIdValue(ByteBuffer signV2Block, int removeId) throws IOException {
+        // 把除了removeId以外的键值对按原来的顺序拷贝到新的APK签名块里
+        byte[] magicNumber = Utils.SIG_V2_MAGIC_NUMBER_BYTES;
+        int pairsLimit = signV2Block.capacity() - Long.BYTES - magicNumber.length;
+        ByteBuffer pairs = ByteBuffer.allocate(pairsLimit - Long.BYTES);
+
+        int position = Long.BYTES;
+        while (position + Long.BYTES + Integer.BYTES <= pairsLimit) {
+            long length = signV2Block.getLong(position);
+            if (length < Integer.BYTES || length > pairsLimit - position - Long.BYTES) {
+                throw new IOException("invalid pair length " + length + " at " + position);
+            }
+            int id = signV2Block.getInt(position + Long.BYTES);
+            int realLength = (int) (Long.BYTES + length);
+            if (id != removeId) {
+                ByteBuffer pair = signV2Block.duplicate();
+                pair.limit(position + realLength);
+                pair.position(position);
+                pairs.put(pair);
+            }
+            position += realLength;
+        }
+        pairs.flip();
+
+        long size = pairs.remaining() + Long.BYTES + magicNumber.length;
+        ByteBuffer buffer = ByteBuffer.allocate((int) (size + Long.BYTES));
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(size);
+        buffer.put(pairs);
+        buffer.putLong(size);
+        buffer.put(magicNumber);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer replaceIdValueInPadding(ByteBuffer signV2Block, int id, byte[] value,
+                                                      BlockBuffers buffers) {
+        // 除了id和padding以外的键值对按原来的顺序保留,后面依次放新的键值对和缩小后的padding,
+        // 键值对区域的总大小保持不变。padding一般是最后一个键值对,所以改动的只是原来padding开头的一小段
+        int magicNumberSize = Utils.SIG_V2_MAGIC_NUMBER_BYTES.length;
+        int pairsLimit = signV2Block.capacity() - Long.BYTES - magicNumberSize;
+
+        // 开头的APK签名块大小和结尾的大小、魔数都和原来一样,键值对直接拷贝到新的APK签名块里
+        ByteBuffer buffer = buffers.allocate(signV2Block.capacity());
+        buffer.putLong(signV2Block.getLong(0));
+
+        boolean hasPadding = false;
+        int position = Long.BYTES;
+        while (position + Long.BYTES + Integer.BYTES <= pairsLimit) {
+            long length = signV2Block.getLong(position);
+            if (length < Integer.BYTES || length > pairsLimit - position - Long.BYTES) {
+                return null;
+            }
+            int pairId = signV2Block.getInt(position + Long.BYTES);
+            int realLength = (int) (Long.BYTES + length);
+            if (pairId == Utils.VERITY_PADDING_SIG) {
+                hasPadding = true;
+            } else if (pairId != id) {
+                ByteBuffer pair = signV2Block.duplicate();
+                pair.limit(position + realLength);
+                pair.position(position);
+                buffer.put(pair);
+            }
+            position += realLength;
+        }
+        if (!hasPadding) {
+            return null;
+        }
+
+        // 剩下的空间要么刚好用完,要么至少还能放下padding键值对的长度和ID
+        int pairSize = value == null ? 0 : Long.BYTES + Integer.BYTES + value.length;
+        int paddingSize = pairsLimit - buffer.position() - pairSize;
+        if (paddingSize < 0 || (paddingSize > 0 && paddingSize < Long.BYTES + Integer.BYTES)) {
+            return null;
+        }
+        if (value != null) {
+            buffer.putLong(Integer.BYTES + value.length);
+            buffer.putInt(id);
+            buffer.put(value);
+        }
+        if (paddingSize > 0) {
+            // padding的Value全部为0,复用的内存里可能有上次的数据,需要清零
+            buffer.putLong(paddingSize - Long.BYTES);
+            buffer.putInt(Utils.VERITY_PADDING_SIG);
+            int zeroLength = paddingSize - Long.BYTES - Integer.BYTES;
+            Arrays.fill(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                    buffer.arrayOffset() + buffer.position() + zeroLength, (byte) 0);
+            buffer.position(buffer.position() + zeroLength);
+        }
+
+        ByteBuffer footer = signV2Block.duplicate();
+        footer.limit(signV2Block.capacity());
+        footer.position(pairsLimit);
+        buffer.put(footer);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer addIdValue(ByteBuffer oldSignV2BlockSize, int id, byte[] value, BlockBuffers buffers) {
+        // ID-Value键值对的格式如下:
+        //
+        // 键值对长度(不包含自己的8个字节)   8字节
+        // ID                            4字节
+        // Value                         键值对长度-ID的4字节
+
+        // 所以整个ID-Value键的长度应该是 Value长度 + ID长度(4字节) + 键值对长度(8字节)
+        long infoLength = value.length;
+        long channelBlockRealSize = Long.BYTES + Integer.BYTES + infoLength;
+
+
+        ByteBuffer buffer = buffers.allocate((int) (oldSignV2BlockSize.capacity() + channelBlockRealSize));
+
+        // 先将原本的APK完整拷贝出来
+        oldSignV2BlockSize.position(0);
+        buffer.put(oldSignV2BlockSize);
+
+        // 读取原本的APK签名块长度
+        oldSignV2BlockSize.position(0);
+        long originSize = oldSignV2BlockSize.getLong();
+
+        // 该长度要加上插入的渠道信息键值对长度
+        buffer.position(0);
+        buffer.putLong(originSize + channelBlockRealSize);
+
+        // APK签名块结构如下:
+        //
+        // 1. APK签名块大小(不包含自己的8个字节)        8字节
+        // 2. ID-Value键值对                        大小可变
+        // 3. APK签名块大小(和第1部分相等)             8字节
+        // 4. 魔法数(固定为字符串"APK Sig Block 42")  16字节
+
+        // 我们把渠道包键值对放到整个APK签名块的最后
+        // 所以从后往前减去魔法数的16字节,减去APK签名块大小的8字节
+        // 定位到渠道包键值的起始位置
+        long magicNumberSize = Utils.SIG_V2_MAGIC_NUMBER_BYTES.length;
+        buffer.position((int) (oldSignV2BlockSize.capacity() - magicNumberSize - Long.BYTES));
+
+        // 插入渠道包键值对数据
+        buffer.putLong(infoLength + Integer.BYTES);
+        buffer.putInt(id);
+        buffer.put(value);
+
+        // 插入APK签名块长度
+        buffer.putLong(originSize + channelBlockRealSize);
+
+        // 插入魔法数
+        buffer.put(Utils.SIG_V2_MAGIC_NUMBER_BYTES);
+
+        buffer.flip();
+        return buffer;
+    }
+}
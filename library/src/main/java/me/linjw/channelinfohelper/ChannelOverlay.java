@@ -0,0 +1,184 @@
+package me.linjw.channelinfohelper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * 渠道包相对于源apk的差异。
+ * 渠道包和源apk只有APK签名块(V1为eocd)之后的数据不同,所以只需要保存源apk的摘要、
+ * 可以直接复用的源apk开头部分的长度以及后面的数据,就能在需要的时候还原出完整的渠道包。
+ *
+ * 文件格式如下,所有数字都是小端:
+ *
+ * 魔数(0x06054b53)              4字节
+ * 版本                          2字节
+ * 源apk摘要长度                  2字节
+ * 源apk长度                     8字节
+ * 源apk的SHA-256摘要            源apk摘要长度
+ * 复用的源apk开头部分的长度        8字节
+ * tail长度                     8字节
+ * tail                         tail长度
+ */
+public class ChannelOverlay {
+    public static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final short VERSION = 1;
+    private static final int HEADER_LENGTH = Integer.BYTES + Short.BYTES + Short.BYTES + Long.BYTES;
+
+    private final long mBaseLength;
+    private final byte[] mBaseDigest;
+    private final long mPrefixLength;
+    private final ByteBuffer mTail;
+
+    ChannelOverlay(long baseLength, byte[] baseDigest, long prefixLength, ByteBuffer tail) {
+        mBaseLength = baseLength;
+        mBaseDigest = baseDigest;
+        mPrefixLength = prefixLength;
+        mTail = tail.asReadOnlyBuffer();
+    }
+
+    /**
+     * 计算源apk的摘要,生成和还原同一个源apk的多个渠道包时只需要计算一次
+     */
+    public static byte[] digest(FileChannel baseApk) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        Utils.digest(baseApk, 0, baseApk.size(), digest);
+        return digest.digest();
+    }
+
+    public static ChannelOverlay read(String overlayFile) throws IOException {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(new File(overlayFile), "r");
+            return read(file.getChannel());
+        } finally {
+            Utils.safeClose(file);
+        }
+    }
+
+    /**
+     * 读取overlay文件,格式不对的话抛出IOException
+     */
+    public static ChannelOverlay read(FileChannel overlay) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        Utils.readFully(overlay, header, 0);
+        if (header.getInt(0) != Utils.CHANNEL_OVERLAY_SIG) {
+            throw new IOException("not a channel overlay");
+        }
+        if (header.getShort(Integer.BYTES) != VERSION) {
+            throw new IOException("unsupported channel overlay version " + header.getShort(Integer.BYTES));
+        }
+        int digestLength = header.getShort(Integer.BYTES + Short.BYTES) & 0xffff;
+        long baseLength = header.getLong(Integer.BYTES + Short.BYTES + Short.BYTES);
+
+        ByteBuffer body = ByteBuffer.allocate(digestLength + Long.BYTES + Long.BYTES);
+        body.order(ByteOrder.LITTLE_ENDIAN);
+        Utils.readFully(overlay, body, HEADER_LENGTH);
+        body.flip();
+        byte[] baseDigest = new byte[digestLength];
+        body.get(baseDigest);
+        long prefixLength = body.getLong();
+        long tailLength = body.getLong();
+
+        long tailOffset = HEADER_LENGTH + body.capacity();
+        if (prefixLength < 0 || prefixLength > baseLength
+                || tailLength < 0 || tailLength > Integer.MAX_VALUE || tailLength != overlay.size() - tailOffset) {
+            throw new IOException("corrupted channel overlay");
+        }
+        ByteBuffer tail = ByteBuffer.allocate((int) tailLength);
+        Utils.readFully(overlay, tail, tailOffset);
+        tail.flip();
+        return new ChannelOverlay(baseLength, baseDigest, prefixLength, tail);
+    }
+
+    public void writeTo(String overlayFile) throws IOException {
+        FileOutputStream fos = null;
+        FileChannel channel = null;
+        try {
+            fos = new FileOutputStream(overlayFile);
+            channel = fos.getChannel();
+            writeTo(channel);
+        } finally {
+            Utils.safeClose(channel, fos);
+        }
+    }
+
+    public void writeTo(WritableByteChannel dst) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH + mBaseDigest.length + Long.BYTES + Long.BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(Utils.CHANNEL_OVERLAY_SIG);
+        header.putShort(VERSION);
+        header.putShort((short) mBaseDigest.length);
+        header.putLong(mBaseLength);
+        header.put(mBaseDigest);
+        header.putLong(mPrefixLength);
+        header.putLong(mTail.capacity());
+        header.flip();
+
+        ByteBuffer tail = mTail.duplicate();
+        tail.clear();
+        Utils.writeFully(dst, header);
+        Utils.writeFully(dst, tail);
+    }
+
+    public long getBaseLength() {
+        return mBaseLength;
+    }
+
+    public byte[] getBaseDigest() {
+        return mBaseDigest.clone();
+    }
+
+    public long getPrefixLength() {
+        return mPrefixLength;
+    }
+
+    /**
+     * 返回只读的tail数据
+     */
+    public ByteBuffer getTail() {
+        ByteBuffer tail = mTail.duplicate();
+        tail.clear();
+        return tail;
+    }
+
+    /**
+     * 还原出来的渠道包的长度
+     */
+    public long getLength() {
+        return mPrefixLength + mTail.capacity();
+    }
+
+    /**
+     * 判断是否由baseApk生成。baseDigest为null时只比较长度
+     */
+    public boolean matches(FileChannel baseApk, byte[] baseDigest) throws IOException {
+        if (baseApk.size() != mBaseLength) {
+            return false;
+        }
+        return baseDigest == null || Arrays.equals(baseDigest, mBaseDigest);
+    }
+
+    /**
+     * 从源apk拷贝开头的部分,然后写入tail,还原出完整的渠道包
+     */
+    public void reconstruct(FileChannel baseApk, WritableByteChannel dst, ICopyEngine copyEngine) throws IOException {
+        copyEngine.copy(baseApk, 0, mPrefixLength, dst);
+        Utils.writeFully(dst, getTail());
+    }
+}
@@ -0,0 +1,159 @@
+package me.linjw.channelinfohelper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * 只输出渠道包相对于源apk的差异{@link ChannelOverlay},而不是完整的渠道包。
+ * 每个渠道的输出只有APK签名块、central directory和eocd的大小,需要完整的渠道包时再用{@link #reconstruct}还原。
+ *
+ * 实现了{@link IChannelInfoWriter},可以直接交给{@link ChannelInfoBatchWriter}或者{@link ChannelInfoParallelWriter}批量生成,
+ * 这时候outputApk为overlay文件的路径
+ */
+public class ChannelOverlayWriter implements IChannelInfoWriter {
+    private final ICopyEngine mCopyEngine;
+
+    // 同一个源apk生成或者还原多个渠道包时摘要只计算一次
+    private final SourceCache<byte[]> mDigests = new SourceCache<byte[]>() {
+        @Override
+        protected byte[] compute(ApkLayout srcLayout, FileChannel srcChannel) throws IOException {
+            return ChannelOverlay.digest(srcChannel);
+        }
+    };
+
+    public ChannelOverlayWriter() {
+        this(new TransferCopyEngine());
+    }
+
+    public ChannelOverlayWriter(ICopyEngine copyEngine) {
+        mCopyEngine = copyEngine;
+    }
+
+    @Override
+    public boolean addChannelInfo(String srcApk, String outputApk, String channelInfo) {
+        RandomAccessFile zipFile = null;
+        FileChannel srcChannel = null;
+        boolean success = false;
+        ChannelInfoTrace.begin(ChannelInfoTrace.Kind.WRITE, outputApk);
+        try {
+            File srcFile = new File(srcApk);
+            zipFile = new RandomAccessFile(srcFile, "r");
+            srcChannel = zipFile.getChannel();
+
+            ApkLayout layout = ApkLayout.parse(zipFile, srcFile);
+            if (layout == null) {
+                return false;
+            }
+            success = addChannelInfo(layout, srcChannel, outputApk, channelInfo);
+            return success;
+        } catch (Exception e) {
+            e.printStackTrace();
+            ChannelInfoTrace.onFailure(e);
+            return false;
+        } finally {
+            Utils.safeClose(srcChannel, zipFile);
+            ChannelInfoTrace.end(success);
+        }
+    }
+
+    @Override
+    public boolean addChannelInfo(ApkLayout srcLayout, FileChannel srcChannel, String outputApk, String channelInfo) {
+        boolean success = false;
+        ChannelInfoTrace.begin(ChannelInfoTrace.Kind.WRITE, outputApk);
+        try {
+            ChannelOverlay overlay = createOverlay(srcLayout, srcChannel, getDigest(srcLayout, srcChannel), channelInfo);
+            overlay.writeTo(outputApk);
+            ChannelInfoTrace.onVersion(srcLayout.hasSignV2Block()
+                    ? ChannelInfoTrace.VERSION_V2 : ChannelInfoTrace.VERSION_V1);
+            success = true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            ChannelInfoTrace.onFailure(e);
+            return false;
+        } finally {
+            ChannelInfoTrace.end(success);
+        }
+        return true;
+    }
+
+    /**
+     * 把overlay写到output
+     */
+    @Override
+    public boolean addChannelInfo(ApkLayout srcLayout, FileChannel srcChannel, WritableByteChannel output,
+                                  String channelInfo) {
+        boolean success = false;
+        ChannelInfoTrace.begin(ChannelInfoTrace.Kind.WRITE, null);
+        try {
+            ChannelOverlay overlay = createOverlay(srcLayout, srcChannel, getDigest(srcLayout, srcChannel), channelInfo);
+            overlay.writeTo(output);
+            ChannelInfoTrace.onVersion(srcLayout.hasSignV2Block()
+                    ? ChannelInfoTrace.VERSION_V2 : ChannelInfoTrace.VERSION_V1);
+            success = true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            ChannelInfoTrace.onFailure(e);
+            return false;
+        } finally {
+            ChannelInfoTrace.end(success);
+        }
+        return true;
+    }
+
+    /**
+     * 生成渠道包相对于源apk的差异,baseDigest为{@link ChannelOverlay#digest}计算的源apk摘要
+     */
+    public static ChannelOverlay createOverlay(ApkLayout srcLayout, FileChannel srcChannel, byte[] baseDigest,
+                                               String channelInfo) throws IOException {
+        long begin = ChannelInfoTrace.beginPhase();
+        ChannelApk channelApk = ChannelInfoWriter.newChannelApk(srcLayout, channelInfo);
+        ChannelOverlay overlay = new ChannelOverlay(srcLayout.getApkLength(), baseDigest,
+                channelApk.getPrefixLength(), channelApk.readTail(srcChannel));
+        ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.BUILD_TAIL, begin);
+        return overlay;
+    }
+
+    /**
+     * 使用源apk和overlay还原出完整的渠道包,源apk和生成overlay时的不一致的话返回false。
+     * 源apk的摘要按路径、大小和修改时间缓存,用同一个源apk还原多个渠道包时只计算一次
+     */
+    public boolean reconstruct(String baseApk, String overlayFile, String outputApk) {
+        RandomAccessFile base = null;
+        FileOutputStream fos = null;
+        FileChannel dstChannel = null;
+        try {
+            ChannelOverlay overlay = ChannelOverlay.read(overlayFile);
+            File baseFile = new File(baseApk);
+            base = new RandomAccessFile(baseFile, "r");
+            FileChannel baseChannel = base.getChannel();
+            // 先只比较大小,不一致的话不需要计算摘要
+            if (!overlay.matches(baseChannel, null)) {
+                return false;
+            }
+            ApkLayout layout = ApkLayout.parse(base, baseFile);
+            if (layout == null || !overlay.matches(baseChannel, getDigest(layout, baseChannel))) {
+                return false;
+            }
+
+            fos = new FileOutputStream(outputApk);
+            dstChannel = fos.getChannel();
+            overlay.reconstruct(baseChannel, dstChannel, mCopyEngine);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            Utils.safeClose(dstChannel, fos, base);
+        }
+        return true;
+    }
+
+    private byte[] getDigest(ApkLayout srcLayout, FileChannel srcChannel) throws IOException {
+        byte[] digest = mDigests.get(srcLayout, srcChannel);
+        return Arrays.copyOf(digest, digest.length);
+    }
+}
@@ -0,0 +1,214 @@
+package me.linjw.channelinfohelper;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 多个键值对组成的渠道信息,作为一个ID-Value键值对写到APK签名块里。
+ * 格式如下(小端):
+ *
+ * 键值对数量                              2字节
+ * 索引(每个键值对一项)
+ *      key的起始位置                      4字节
+ *      key的长度                         2字节
+ *      value的起始位置                    4字节
+ *      value的长度                       4字节
+ * key和value的数据                        大小可变
+ *
+ * 读取时只需要遍历索引比较key,找到之后再读取对应的value,不需要解析其他的键值对
+ */
+public class ChannelPayload {
+    private static final int COUNT_LENGTH = Short.BYTES;
+    private static final int INDEX_ENTRY_LENGTH = Integer.BYTES + Short.BYTES + Integer.BYTES + Integer.BYTES;
+    private static final int MAX_UNSIGNED_SHORT = 0xffff;
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+
+    private ChannelPayload(ByteBuffer buffer, int count) {
+        mBuffer = buffer;
+        mCount = count;
+    }
+
+    /**
+     * 解析从APK签名块里读出来的数据,格式不对的话返回null
+     */
+    public static ChannelPayload parse(ByteBuffer value) {
+        ByteBuffer buffer = value.slice().order(ByteOrder.LITTLE_ENDIAN);
+        int capacity = buffer.capacity();
+        if (capacity < COUNT_LENGTH) {
+            return null;
+        }
+
+        int count = buffer.getShort(0) & MAX_UNSIGNED_SHORT;
+        if (COUNT_LENGTH + (long) count * INDEX_ENTRY_LENGTH > capacity) {
+            return null;
+        }
+
+        // 检查索引指向的数据都在范围内,之后读取的时候就不需要再检查
+        for (int i = 0; i < count; i++) {
+            int entry = indexPosition(i);
+            long keyOffset = buffer.getInt(entry) & 0xffffffffL;
+            int keyLength = buffer.getShort(entry + Integer.BYTES) & MAX_UNSIGNED_SHORT;
+            long valueOffset = buffer.getInt(entry + Integer.BYTES + Short.BYTES) & 0xffffffffL;
+            long valueLength = buffer.getInt(entry + Integer.BYTES + Short.BYTES + Integer.BYTES) & 0xffffffffL;
+            if (keyOffset + keyLength > capacity || valueOffset + valueLength > capacity) {
+                return null;
+            }
+        }
+        return new ChannelPayload(buffer, count);
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    public List<String> keys() {
+        List<String> keys = new ArrayList<>(mCount);
+        for (int i = 0; i < mCount; i++) {
+            keys.add(new String(slice(keyOffset(i), keyLength(i)), StandardCharsets.UTF_8));
+        }
+        return keys;
+    }
+
+    public boolean containsKey(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * 找不到key的话返回null
+     */
+    public byte[] getBytes(String key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        return slice(valueOffset(index), valueLength(index));
+    }
+
+    /**
+     * value按UTF-8解码,找不到key的话返回null
+     */
+    public String getString(String key) {
+        byte[] value = getBytes(key);
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 序列化后的数据,用于写入APK签名块
+     */
+    public ByteBuffer toByteBuffer() {
+        ByteBuffer buffer = mBuffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        buffer.clear();
+        return buffer;
+    }
+
+    private int indexOf(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < mCount; i++) {
+            if (keyLength(i) == keyBytes.length && keyEquals(keyOffset(i), keyBytes)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean keyEquals(int offset, byte[] key) {
+        for (int i = 0; i < key.length; i++) {
+            if (mBuffer.get(offset + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] slice(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer buffer = mBuffer.duplicate();
+        buffer.position(offset);
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private int keyOffset(int index) {
+        return mBuffer.getInt(indexPosition(index));
+    }
+
+    private int keyLength(int index) {
+        return mBuffer.getShort(indexPosition(index) + Integer.BYTES) & MAX_UNSIGNED_SHORT;
+    }
+
+    private int valueOffset(int index) {
+        return mBuffer.getInt(indexPosition(index) + Integer.BYTES + Short.BYTES);
+    }
+
+    private int valueLength(int index) {
+        return mBuffer.getInt(indexPosition(index) + Integer.BYTES + Short.BYTES + Integer.BYTES);
+    }
+
+    private static int indexPosition(int index) {
+        return COUNT_LENGTH + index * INDEX_ENTRY_LENGTH;
+    }
+
+    public static class Builder {
+        private final Map<String, byte[]> mEntries = new LinkedHashMap<>();
+
+        public Builder put(String key, String value) {
+            return put(key, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public Builder put(String key, byte[] value) {
+            if (key.getBytes(StandardCharsets.UTF_8).length > MAX_UNSIGNED_SHORT) {
+                throw new IllegalArgumentException("key too long: " + key);
+            }
+            // 先检查再插入,抛出异常之后Builder里的内容不变,还可以继续build
+            if (mEntries.size() >= MAX_UNSIGNED_SHORT && !mEntries.containsKey(key)) {
+                throw new IllegalArgumentException("too many entries");
+            }
+            mEntries.put(key, value);
+            return this;
+        }
+
+        public ChannelPayload build() {
+            int count = mEntries.size();
+            int dataOffset = indexPosition(count);
+            int size = dataOffset;
+            List<byte[]> keys = new ArrayList<>(count);
+            for (Map.Entry<String, byte[]> entry : mEntries.entrySet()) {
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                keys.add(key);
+                size += key.length + entry.getValue().length;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putShort((short) count);
+
+            // 先写索引,再依次写入每个键值对的key和value
+            int index = 0;
+            int position = dataOffset;
+            for (byte[] value : mEntries.values()) {
+                byte[] key = keys.get(index);
+                buffer.position(indexPosition(index));
+                buffer.putInt(position);
+                buffer.putShort((short) key.length);
+                buffer.putInt(position + key.length);
+                buffer.putInt(value.length);
+
+                buffer.position(position);
+                buffer.put(key);
+                buffer.put(value);
+                position = buffer.position();
+                index++;
+            }
+
+            buffer.clear();
+            return new ChannelPayload(buffer, count);
+        }
+    }
+}
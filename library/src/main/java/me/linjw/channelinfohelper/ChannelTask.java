@@ -0,0 +1,22 @@
+package me.linjw.channelinfohelper;
+
+/**
+ * 批量生成渠道包时的一个任务: 把channelInfo写入源apk后输出到outputApk
+ */
+public class ChannelTask {
+    private final String mChannelInfo;
+    private final String mOutputApk;
+
+    public ChannelTask(String channelInfo, String outputApk) {
+        mChannelInfo = channelInfo;
+        mOutputApk = outputApk;
+    }
+
+    public String getChannelInfo() {
+        return mChannelInfo;
+    }
+
+    public String getOutputApk() {
+        return mOutputApk;
+    }
+}
@@ -0,0 +1,82 @@
+package me.linjw.channelinfohelper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 查找zip包的end of central directory record。
+ * 绝大多数apk的注释为空,eocd就是文件的最后22个字节,所以先只读这22个字节,
+ * 找不到的话再逐步扩大读取的范围,最多读取eocd可能的最大长度
+ */
+public class EocdLocator {
+    // 依次尝试读取的文件末尾数据的长度
+    private static final int[] PROBE_LENGTHS = new int[]{
+            Utils.EOCD_MIN_LENGTH,
+            4096,
+            Utils.EOCD_MAX_LENGTH
+    };
+
+    /**
+     * 找不到eocd的话返回null
+     */
+    public static ByteBuffer locate(FileChannel zipFile) throws IOException {
+        long size = zipFile.size();
+        if (size < Utils.EOCD_MIN_LENGTH) {
+            return null;
+        }
+
+        int checkedLength = 0;
+        for (int probeLength : PROBE_LENGTHS) {
+            int length = (int) Math.min(probeLength, size);
+            if (length <= checkedLength) {
+                break;
+            }
+            ByteBuffer tail = ByteBuffer.allocate(length);
+            tail.order(ByteOrder.LITTLE_ENDIAN);
+            Utils.readFully(zipFile, tail, size - length);
+
+            // 上一次读取的范围已经检查过了,只需要检查新增的部分
+            ByteBuffer eocd = find(tail, checkedLength);
+            if (eocd != null) {
+                return eocd;
+            }
+            checkedLength = length;
+        }
+        return null;
+    }
+
+    /**
+     * 在从文件末尾读出来的数据里从后往前查找eocd,找不到的话返回null
+     */
+    public static ByteBuffer find(ByteBuffer tail) {
+        return find(tail, 0);
+    }
+
+    private static ByteBuffer find(ByteBuffer tail, int checkedLength) {
+        // end of central directory record 的格式如下:
+        //
+        // end of central dir signature                                                    4 bytes  (0x06054b50)
+        // ...                                                                             16 bytes
+        // .ZIP file comment length                                                        2 bytes
+        // .ZIP file comment                                                               (variable size)
+        //
+        // 注释里面也可能刚好出现0x06054b50,所以还需要检查注释长度,
+        // 只有注释刚好延伸到文件末尾的才是真正的eocd
+        int capacity = tail.capacity();
+        int start = Math.min(capacity - Utils.EOCD_MIN_LENGTH, capacity - checkedLength);
+        for (int i = start; i >= 0; i--) {
+            if (tail.getInt(i) != Utils.EOCD_SIG) {
+                continue;
+            }
+            int commentLength = tail.getShort(i + Utils.EOCD_MIN_LENGTH - Utils.EOCD_SIZE_OF_COMMENT_LENGTH) & 0xffff;
+            if (i + Utils.EOCD_MIN_LENGTH + commentLength == capacity) {
+                ByteBuffer buffer = tail.duplicate();
+                buffer.position(i);
+                return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,8 @@
+package me.linjw.channelinfohelper;
+
+/**
+ * 每检查完一个apk回调一次,回调在{@link ChannelAuditScanner}的工作线程里进行,需要自己保证线程安全
+ */
+public interface IChannelAuditListener {
+    void onResult(ChannelAuditResult result);
+}
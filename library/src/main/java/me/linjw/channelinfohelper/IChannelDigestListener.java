@@ -0,0 +1,9 @@
+package me.linjw.channelinfohelper;
+
+/**
+ * 每生成一个渠道包回调一次它的摘要,在执行写入的线程里回调,需要自己保证线程安全。
+ * 写到流的时候outputApk为null
+ */
+public interface IChannelDigestListener {
+    void onDigest(String outputApk, ChannelDigest digest);
+}
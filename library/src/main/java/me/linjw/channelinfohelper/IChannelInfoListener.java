@@ -0,0 +1,9 @@
+package me.linjw.channelinfohelper;
+
+/**
+ * 每次读取或者写入渠道信息结束之后回调,用于统计各个阶段的耗时、读写的字节数和失败原因。
+ * 通过{@link ChannelInfoTrace#setListener}设置,回调在执行读写的线程里进行,需要自己保证线程安全
+ */
+public interface IChannelInfoListener {
+    void onTrace(ChannelInfoTrace trace);
+}
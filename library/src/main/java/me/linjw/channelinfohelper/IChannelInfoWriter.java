@@ -0,0 +1,16 @@
+package me.linjw.channelinfohelper;
+
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+public interface IChannelInfoWriter {
+    boolean addChannelInfo(String srcApk, String outputApk, String channelInfo);
+
+    boolean addChannelInfo(ApkLayout srcLayout, FileChannel srcChannel, String outputApk, String channelInfo);
+
+    /**
+     * 把渠道包写到output的当前位置,不会关闭output。
+     * 返回false时output里可能已经写入了一部分数据,调用方需要丢弃output里的内容,不能在同一个output上重新写入
+     */
+    boolean addChannelInfo(ApkLayout srcLayout, FileChannel srcChannel, WritableByteChannel output, String channelInfo);
+}
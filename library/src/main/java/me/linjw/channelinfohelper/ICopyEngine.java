@@ -0,0 +1,16 @@
+package me.linjw.channelinfohelper;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 把源文件的一段数据原样拷贝到输出,用于拷贝APK签名块之前的数据以及central directory
+ */
+public interface ICopyEngine {
+    /**
+     * 把src从position开始的length个字节写到dst的当前位置。
+     * 只使用带position的读取,不会修改src的position
+     */
+    void copy(FileChannel src, long position, long length, WritableByteChannel dst) throws IOException;
+}
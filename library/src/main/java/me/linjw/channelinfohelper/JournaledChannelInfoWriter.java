@@ -0,0 +1,327 @@
+package me.linjw.channelinfohelper;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 可以中断后继续的批量生成。
+ * 每个渠道包先写到同目录下的临时文件,写完并且同步到磁盘之后再重命名成输出文件,中途退出不会留下不完整的渠道包。
+ * 每完成一个渠道包就往日志文件追加一行: 源apk摘要、渠道包大小、输出路径和渠道信息,
+ * 字段之间用tab分隔,路径和渠道信息里的反斜杠、tab和换行会转义。
+ * 重新运行时日志里有记录、源apk没有变化、渠道信息相同而且输出文件大小一致的渠道包会直接跳过,
+ * 只重新生成真正缺少的部分。
+ *
+ * 包装其他{@link IChannelInfoWriter},可以直接交给{@link ChannelInfoBatchWriter}或者{@link ChannelInfoParallelWriter}使用
+ */
+public class JournaledChannelInfoWriter implements IChannelInfoWriter, Closeable {
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String SEPARATOR = "\t";
+    private static final ICopyEngine sCopyEngine = new TransferCopyEngine();
+
+    private final IChannelInfoWriter mWriter;
+    private final Map<String, Entry> mEntries = new HashMap<>();
+    private final OutputStream mJournal;
+    private final AtomicInteger mSkipped = new AtomicInteger();
+
+    // 同一个源apk的摘要只计算一次
+    private final SourceCache<String> mDigests = new SourceCache<String>() {
+        @Override
+        protected String compute(ApkLayout srcLayout, FileChannel srcChannel) throws IOException {
+            return Utils.toHex(ChannelOverlay.digest(srcChannel));
+        }
+    };
+
+    public JournaledChannelInfoWriter(String journalFile) throws IOException {
+        this(new ChannelInfoWriter(), journalFile);
+    }
+
+    /**
+     * 读取已有的日志,之后的记录追加到日志的后面
+     */
+    public JournaledChannelInfoWriter(IChannelInfoWriter writer, String journalFile) throws IOException {
+        mWriter = writer;
+        File file = new File(journalFile);
+        boolean truncated = false;
+        if (file.exists()) {
+            truncated = load(file);
+        }
+        mJournal = new FileOutputStream(file, true);
+        if (truncated) {
+            // 上次退出时最后一行只写了一半,先换行,避免和新的记录连在一起
+            mJournal.write('\n');
+        }
+    }
+
+    @Override
+    public boolean addChannelInfo(String srcApk, String outputApk, String channelInfo) {
+        RandomAccessFile zipFile = null;
+        FileChannel srcChannel = null;
+        try {
+            File srcFile = new File(srcApk);
+            zipFile = new RandomAccessFile(srcFile, "r");
+            srcChannel = zipFile.getChannel();
+
+            ApkLayout layout = ApkLayout.parse(zipFile, srcFile);
+            if (layout == null) {
+                return false;
+            }
+            return addChannelInfo(layout, srcChannel, outputApk, channelInfo);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            Utils.safeClose(srcChannel, zipFile);
+        }
+    }
+
+    @Override
+    public boolean addChannelInfo(ApkLayout srcLayout, FileChannel srcChannel, String outputApk, String channelInfo) {
+        File output = new File(outputApk);
+        File temp = new File(outputApk + TEMP_SUFFIX);
+        try {
+            String digest = mDigests.get(srcLayout, srcChannel);
+            if (isCompleted(digest, output, channelInfo)) {
+                mSkipped.incrementAndGet();
+                return true;
+            }
+
+            // 写到临时文件再重命名,同一个目录下的重命名是原子的。
+            // 重命名之前先把临时文件同步到磁盘,否则掉电之后可能只留下重命名,文件内容却是空的
+            if (!mWriter.addChannelInfo(srcLayout, srcChannel, temp.getPath(), channelInfo)) {
+                temp.delete();
+                return false;
+            }
+            try {
+                if (!temp.exists()) {
+                    // 没有渠道信息时被包装的writer直接返回true,不会生成文件,这时的渠道包就是源apk本身
+                    if (channelInfo != null && !channelInfo.isEmpty()) {
+                        throw new IOException("writer did not create " + temp);
+                    }
+                    copySource(srcLayout, srcChannel, temp);
+                }
+                sync(temp);
+                move(temp, output);
+            } catch (IOException e) {
+                temp.delete();
+                throw e;
+            }
+            append(new Entry(digest, output.length(), output.getPath(), channelInfo));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 输出到流的时候没有文件可以跳过,直接交给被包装的writer
+     */
+    @Override
+    public boolean addChannelInfo(ApkLayout srcLayout, FileChannel srcChannel, WritableByteChannel output,
+                                  String channelInfo) {
+        return mWriter.addChannelInfo(srcLayout, srcChannel, output, channelInfo);
+    }
+
+    /**
+     * 因为已经完成而跳过的渠道包数量
+     */
+    public int getSkipped() {
+        return mSkipped.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (mEntries) {
+            mJournal.close();
+        }
+    }
+
+    private boolean isCompleted(String digest, File output, String channelInfo) {
+        Entry entry;
+        synchronized (mEntries) {
+            entry = mEntries.get(output.getPath());
+        }
+        return entry != null
+                && entry.mDigest.equals(digest)
+                && entry.mChannelInfo.equals(channelInfo == null ? "" : channelInfo)
+                && entry.mSize == output.length();
+    }
+
+    private void append(Entry entry) throws IOException {
+        // 每条记录一次写完,进程中途退出最多只会丢掉最后一行
+        byte[] line = (entry.mDigest + SEPARATOR + entry.mSize + SEPARATOR + escape(entry.mOutputApk) + SEPARATOR
+                + escape(entry.mChannelInfo) + "\n").getBytes(StandardCharsets.UTF_8);
+        synchronized (mEntries) {
+            mJournal.write(line);
+            mJournal.flush();
+            mEntries.put(entry.mOutputApk, entry);
+        }
+    }
+
+    /**
+     * @return 日志的最后一行是否不完整
+     */
+    private boolean load(File file) throws IOException {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // 格式不对的行(比如写到一半退出的最后一行)直接忽略,对应的渠道包会重新生成
+                String[] fields = line.split(SEPARATOR, 4);
+                if (fields.length != 4) {
+                    continue;
+                }
+                try {
+                    Entry entry = new Entry(fields[0], Long.parseLong(fields[1]), unescape(fields[2]),
+                            unescape(fields[3]));
+                    mEntries.put(entry.mOutputApk, entry);
+                } catch (NumberFormatException e) {
+                    // 忽略
+                }
+            }
+        } finally {
+            Utils.safeClose(reader);
+        }
+        return file.length() > 0 && !endsWithNewLine(file);
+    }
+
+    private static boolean endsWithNewLine(File file) throws IOException {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            raf.seek(raf.length() - 1);
+            return raf.read() == '\n';
+        } finally {
+            Utils.safeClose(raf);
+        }
+    }
+
+    private static void copySource(ApkLayout srcLayout, FileChannel srcChannel, File file) throws IOException {
+        FileOutputStream fos = null;
+        FileChannel dstChannel = null;
+        try {
+            fos = new FileOutputStream(file);
+            dstChannel = fos.getChannel();
+            new ChannelApk(srcLayout.getApkLength()).writeTo(srcChannel, dstChannel, sCopyEngine);
+        } finally {
+            Utils.safeClose(dstChannel, fos);
+        }
+    }
+
+    /**
+     * "rw"模式打开不存在的文件会创建一个空文件,所以先检查文件是否存在,不能把空文件当成渠道包重命名过去
+     */
+    private static void sync(File file) throws IOException {
+        if (!file.exists()) {
+            throw new FileNotFoundException(file.getPath());
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.getChannel().force(true);
+        } finally {
+            Utils.safeClose(raf);
+        }
+    }
+
+    /**
+     * File.renameTo在windows上目标文件已经存在时会失败,使用Files.move覆盖
+     */
+    private static void move(File src, File dst) throws IOException {
+        try {
+            Files.move(src.toPath(), dst.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(src.toPath(), dst.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 转义反斜杠、tab和换行,保证每条记录只占一行并且字段可以用tab分开
+     */
+    private static String escape(String value) {
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                default:
+                    builder.append(c);
+                    break;
+            }
+        }
+        return builder.toString();
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\' || i + 1 == value.length()) {
+                builder.append(c);
+                continue;
+            }
+            char next = value.charAt(++i);
+            switch (next) {
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                default:
+                    builder.append(next);
+                    break;
+            }
+        }
+        return builder.toString();
+    }
+
+    private static class Entry {
+        final String mDigest;
+        final long mSize;
+        final String mOutputApk;
+        final String mChannelInfo;
+
+        Entry(String digest, long size, String outputApk, String channelInfo) {
+            mDigest = digest;
+            mSize = size;
+            mOutputApk = outputApk;
+            mChannelInfo = channelInfo == null ? "" : channelInfo;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package me.linjw.channelinfohelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 使用内存映射的方式解析渠道信息。
+ * 只映射apk的末尾(V1渠道信息和eocd)以及APK签名块这两段区域,之后直接从映射的内存里解析,
+ * 不再需要seek和read系统调用。
+ * 映射的结果在进程内共享,同一个apk只在第一次查找的时候映射,
+ * apk的长度或者修改时间变化之后才会重新映射
+ */
+public class MappedChannelInfoParser {
+    // V1渠道信息块结尾的[渠道信息长度]和[魔数]
+    private static final int V1_TRAILER_LENGTH = Short.BYTES + Integer.BYTES;
+
+    private static final Map<String, MappedApk> sMappedApks = new HashMap<>();
+
+    /**
+     * 读取V1或V2格式的渠道信息,没有渠道信息的话返回null
+     */
+    public static String getChannelInfo(String apkPath) throws IOException {
+        String channelInfo = null;
+        ChannelInfoTrace.begin(ChannelInfoTrace.Kind.READ, apkPath);
+        try {
+            channelInfo = readChannelInfo(apkPath);
+            return channelInfo;
+        } catch (IOException e) {
+            ChannelInfoTrace.onFailure(e);
+            throw e;
+        } finally {
+            ChannelInfoTrace.end(channelInfo != null);
+        }
+    }
+
+    private static String readChannelInfo(String apkPath) throws IOException {
+        MappedApk apk = map(apkPath);
+        if (apk == null) {
+            ChannelInfoTrace.onFailure("not a zip file", null);
+            return null;
+        }
+
+        long begin = ChannelInfoTrace.beginPhase();
+        String channelInfo = apk.getChannelInfoV1();
+        if (channelInfo != null) {
+            ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.READ_CHANNEL_INFO, begin);
+            ChannelInfoTrace.onVersion(ChannelInfoTrace.VERSION_V1);
+            return channelInfo;
+        }
+
+        ByteBuffer value = apk.findIdValue(Utils.CHANNEL_INFO_SIG);
+        if (value == null) {
+            ChannelInfoTrace.onFailure("no channel info", null);
+            return null;
+        }
+        channelInfo = Utils.readString(value, value.remaining());
+        ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.READ_CHANNEL_INFO, begin);
+        ChannelInfoTrace.onVersion(ChannelInfoTrace.VERSION_V2);
+        return channelInfo;
+    }
+
+    /**
+     * 读取多键值对组成的渠道信息,没有的话返回null
+     */
+    public static ChannelPayload getChannelPayload(String apkPath) throws IOException {
+        MappedApk apk = map(apkPath);
+        if (apk == null) {
+            return null;
+        }
+        ByteBuffer value = apk.findIdValue(Utils.CHANNEL_PAYLOAD_SIG);
+        return value == null ? null : ChannelPayload.parse(value);
+    }
+
+    /**
+     * 释放进程内缓存的映射,之后的查找会重新映射apk
+     */
+    public static void clear() {
+        synchronized (sMappedApks) {
+            sMappedApks.clear();
+        }
+    }
+
+    private static MappedApk map(String apkPath) throws IOException {
+        File file = new File(apkPath);
+        String key = file.getAbsolutePath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+
+        synchronized (sMappedApks) {
+            MappedApk apk = sMappedApks.get(key);
+            if (apk != null && apk.mLength == length && apk.mLastModified == lastModified) {
+                return apk;
+            }
+
+            // 映射建立之后就和文件描述符无关了,所以映射完成就可以关闭文件
+            long begin = ChannelInfoTrace.beginPhase();
+            RandomAccessFile raf = null;
+            try {
+                raf = new RandomAccessFile(file, "r");
+                apk = MappedApk.map(raf.getChannel(), length, lastModified);
+            } finally {
+                Utils.safeClose(raf);
+            }
+            ChannelInfoTrace.endPhase(ChannelInfoTrace.Phase.READ_SIGN_BLOCK, begin);
+            if (apk == null) {
+                sMappedApks.remove(key);
+            } else {
+                sMappedApks.put(key, apk);
+            }
+            return apk;
+        }
+    }
+
+    private static class MappedApk {
+        private final long mLength;
+        private final long mLastModified;
+
+        // apk末尾的数据,包含V1的渠道信息以及eocd
+        private final ByteBuffer mTail;
+
+        // 整个APK签名块,没有的话为null
+        private final ByteBuffer mSignV2Block;
+
+        private MappedApk(long length, long lastModified, ByteBuffer tail, ByteBuffer signV2Block) {
+            mLength = length;
+            mLastModified = lastModified;
+            mTail = tail;
+            mSignV2Block = signV2Block;
+        }
+
+        static MappedApk map(FileChannel apk, long length, long lastModified) throws IOException {
+            long size = apk.size();
+            if (size != length || size < Utils.EOCD_MIN_LENGTH) {
+                return null;
+            }
+
+            // eocd的注释最长0xffff字节,V1的渠道信息也保存在注释里,所以映射eocd的最大长度就能覆盖
+            int tailLength = (int) Math.min(Utils.EOCD_MAX_LENGTH, size);
+            ByteBuffer tail = apk.map(FileChannel.MapMode.READ_ONLY, size - tailLength, tailLength);
+            tail.order(ByteOrder.LITTLE_ENDIAN);
+
+            ByteBuffer eocd = Utils.findEocd(tail);
+            if (eocd == null) {
+                return new MappedApk(length, lastModified, tail, null);
+            }
+
+            // zip64格式的socd offset不在eocd里,由Utils到zip64 eocd record里读取
+            long socdOffset = Utils.getSocdOffset(apk, eocd);
+            SignV2BlockScanner scanner = SignV2BlockScanner.open(apk, socdOffset);
+            if (scanner == null) {
+                return new MappedApk(length, lastModified, tail, null);
+            }
+
+            long blockOffset = scanner.getBlockOffset();
+            ByteBuffer signV2Block = apk.map(FileChannel.MapMode.READ_ONLY, blockOffset, socdOffset - blockOffset);
+            signV2Block.order(ByteOrder.LITTLE_ENDIAN);
+            return new MappedApk(length, lastModified, tail, signV2Block);
+        }
+
+        String getChannelInfoV1() {
+            int length = mTail.capacity();
+            if (length < V1_TRAILER_LENGTH || mTail.getInt(length - Integer.BYTES) != Utils.CHANNEL_INFO_SIG) {
+                return null;
+            }
+
+            short infoLength = mTail.getShort(length - V1_TRAILER_LENGTH);
+            int infoPosition = length - V1_TRAILER_LENGTH - infoLength;
+            if (infoLength <= 0 || infoPosition < 0) {
+                return null;
+            }
+
+            ByteBuffer info = mTail.duplicate();
+            info.position(infoPosition);
+            return Utils.readString(info, infoLength);
+        }
+
+        /**
+         * 在映射的APK签名块里查找键值对,返回只包含Value的buffer
+         */
+        ByteBuffer findIdValue(int id) {
+            if (mSignV2Block == null) {
+                return null;
+            }
+
+            // 键值对在APK签名块开头的8字节之后,结尾的8字节大小和16字节魔数之前
+            int pairsLimit = mSignV2Block.capacity() - Long.BYTES - Utils.SIG_V2_MAGIC_NUMBER.length();
+            int position = Long.BYTES;
+            while (position + Long.BYTES + Integer.BYTES <= pairsLimit) {
+                long length = mSignV2Block.getLong(position);
+                if (length < Integer.BYTES || length > pairsLimit - position - Long.BYTES) {
+                    return null;
+                }
+                if (mSignV2Block.getInt(position + Long.BYTES) == id) {
+                    ByteBuffer value = mSignV2Block.duplicate();
+                    value.limit((int) (position + Long.BYTES + length));
+                    value.position(position + Long.BYTES + Integer.BYTES);
+                    return value.slice().order(ByteOrder.LITTLE_ENDIAN);
+                }
+                position += (int) (Long.BYTES + length);
+            }
+            return null;
+        }
+    }
+}
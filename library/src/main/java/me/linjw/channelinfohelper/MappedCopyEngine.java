@@ -0,0 +1,35 @@
+package me.linjw.channelinfohelper;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 把源文件按块映射到内存再写出,用于transferTo不可用或者效率不高的情况
+ */
+public class MappedCopyEngine implements ICopyEngine {
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private final int mChunkSize;
+
+    public MappedCopyEngine() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    public MappedCopyEngine(int chunkSize) {
+        mChunkSize = chunkSize;
+    }
+
+    @Override
+    public void copy(FileChannel src, long position, long length, WritableByteChannel dst) throws IOException {
+        long end = position + length;
+        while (position < end) {
+            long size = Math.min(mChunkSize, end - position);
+            MappedByteBuffer buffer = src.map(FileChannel.MapMode.READ_ONLY, position, size);
+            ChannelInfoTrace.onRead(size);
+            Utils.writeFully(dst, buffer);
+            position += size;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package me.linjw.channelinfohelper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 流式遍历APK签名块里的ID-Value键值对。
+ * 只读取每个键值对开头的12个字节(键值对长度+ID),跳过Value部分,
+ * 不需要把整个APK签名块读到内存里。
+ * 读取时只使用带position的读取,多个scanner可以在不同线程里同时读取同一个文件,
+ * 但是同一个scanner实例不能在多个线程之间共享
+ */
+public class SignV2BlockScanner implements Iterable<SignV2BlockScanner.Entry> {
+    // 键值对长度(8字节) + ID(4字节)
+    private static final int PAIR_HEADER_LENGTH = Long.BYTES + Integer.BYTES;
+
+    private final FileChannel mApk;
+    private final long mBlockOffset;
+    private final long mPairsEnd;
+    private final ByteBuffer mHeader;
+
+    private SignV2BlockScanner(FileChannel apk, long blockOffset, long pairsEnd) {
+        mApk = apk;
+        mBlockOffset = blockOffset;
+        mPairsEnd = pairsEnd;
+        mHeader = ByteBuffer.allocate(PAIR_HEADER_LENGTH);
+        mHeader.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * 根据socd offset定位APK签名块,没有APK签名块的话返回null
+     */
+    public static SignV2BlockScanner open(FileChannel apk, long socdOffset) throws IOException {
+        // APK签名块结构如下:
+        //
+        // 1. APK签名块大小(不包含自己的8个字节)        8字节
+        // 2. ID-Value键值对                        大小可变
+        // 3. APK签名块大小(和第1部分相等)             8字节
+        // 4. 魔法数(固定为字符串"APK Sig Block 42")  16字节
+        //
+        // 先读结尾的第3、4部分,确认魔数和APK签名块的大小
+        int magicNumberSize = Utils.SIG_V2_MAGIC_NUMBER_BYTES.length;
+        int footerLength = Long.BYTES + magicNumberSize;
+        if (socdOffset < footerLength + Long.BYTES) {
+            return null;
+        }
+        ByteBuffer footer = ByteBuffer.allocate(footerLength);
+        footer.order(ByteOrder.LITTLE_ENDIAN);
+        Utils.readFully(apk, footer, socdOffset - footerLength);
+        footer.position(Long.BYTES);
+        if (!Utils.SIG_V2_MAGIC_NUMBER.equals(Utils.readString(footer, magicNumberSize))) {
+            return null;
+        }
+
+        // 再读开头的第1部分,应该和结尾的APK签名块大小相等
+        long signV2BlockSize = footer.getLong(0);
+        long signV2BlockBegin = socdOffset - signV2BlockSize - Long.BYTES;
+        if (signV2BlockSize < footerLength || signV2BlockBegin < 0) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(Long.BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        Utils.readFully(apk, header, signV2BlockBegin);
+        if (header.getLong(0) != signV2BlockSize) {
+            return null;
+        }
+
+        return new SignV2BlockScanner(apk, signV2BlockBegin, socdOffset - footerLength);
+    }
+
+    /**
+     * APK签名块在文件中的起始位置
+     */
+    public long getBlockOffset() {
+        return mBlockOffset;
+    }
+
+    /**
+     * 键值对区域的结束位置,也就是APK签名块结尾第3部分的起始位置。
+     * 遍历结束时最后一个键值对没有刚好到达这个位置的话说明键值对已经损坏
+     */
+    public long getPairsEnd() {
+        return mPairsEnd;
+    }
+
+    /**
+     * 查找指定ID的键值对,找不到的话返回null
+     */
+    public Entry find(int id) throws IOException {
+        long position = mBlockOffset + Long.BYTES;
+        Entry entry;
+        while ((entry = readEntry(position)) != null) {
+            if (entry.getId() == id) {
+                return entry;
+            }
+            position = entry.getOffset() + entry.getLength();
+        }
+        return null;
+    }
+
+    /**
+     * 读取键值对的Value部分
+     */
+    public ByteBuffer readValue(Entry entry) throws IOException {
+        if (entry.getLength() > Integer.MAX_VALUE) {
+            throw new IOException("value too large: " + entry.getLength());
+        }
+        ByteBuffer value = ByteBuffer.allocate((int) entry.getLength());
+        value.order(ByteOrder.LITTLE_ENDIAN);
+        Utils.readFully(mApk, value, entry.getOffset());
+        value.flip();
+        return value;
+    }
+
+    /**
+     * 读取键值对的Value部分并按UTF-8解码
+     */
+    public String readString(Entry entry) throws IOException {
+        ByteBuffer value = readValue(entry);
+        return Utils.readString(value, value.remaining());
+    }
+
+    /**
+     * 依次返回所有键值对,读取出错时抛出UncheckedIOException
+     */
+    @Override
+    public Iterator<Entry> iterator() {
+        return new Iterator<Entry>() {
+            private long mPosition = mBlockOffset + Long.BYTES;
+            private Entry mNext;
+
+            @Override
+            public boolean hasNext() {
+                if (mNext == null) {
+                    try {
+                        mNext = readEntry(mPosition);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return mNext != null;
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Entry entry = mNext;
+                mNext = null;
+                mPosition = entry.getOffset() + entry.getLength();
+                return entry;
+            }
+        };
+    }
+
+    private Entry readEntry(long position) throws IOException {
+        if (position + PAIR_HEADER_LENGTH > mPairsEnd) {
+            return null;
+        }
+
+        // 键值对格式如下:
+        //
+        // 键值对长度(不包含自己的8个字节)   8字节
+        // ID                            4字节
+        // Value                         键值对长度-ID的4字节
+        mHeader.clear();
+        Utils.readFully(mApk, mHeader, position);
+        long length = mHeader.getLong(0);
+        int id = mHeader.getInt(Long.BYTES);
+
+        // 长度不合法的话说明APK签名块已经损坏,停止遍历
+        long valueLength = length - Integer.BYTES;
+        long valueOffset = position + PAIR_HEADER_LENGTH;
+        if (valueLength < 0 || valueLength > mPairsEnd - valueOffset) {
+            return null;
+        }
+        return new Entry(id, valueOffset, valueLength);
+    }
+
+    public static class Entry {
+        private final int mId;
+        private final long mOffset;
+        private final long mLength;
+
+        Entry(int id, long offset, long length) {
+            mId = id;
+            mOffset = offset;
+            mLength = length;
+        }
+
+        public int getId() {
+            return mId;
+        }
+
+        /**
+         * Value在文件中的起始位置
+         */
+        public long getOffset() {
+            return mOffset;
+        }
+
+        /**
+         * Value的长度
+         */
+        public long getLength() {
+            return mLength;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package me.linjw.channelinfohelper;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按源apk缓存的计算结果,比如源apk的摘要,同一个源apk生成多个渠道包时只计算一次。
+ *
+ * 解析时知道对应文件的ApkLayout以{@link ApkLayout#getSourceKey()}作为key,每次重新解析也能命中缓存,
+ * 其他的ApkLayout只能以自身作为key。
+ * 只保留最近使用的几个源apk,每个源apk单独加锁,计算一个源apk的时候不会阻塞其他源apk
+ */
+abstract class SourceCache<V> {
+    private static final int MAX_SIZE = 8;
+
+    private final Map<Object, Holder<V>> mHolders = new LinkedHashMap<Object, Holder<V>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Holder<V>> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    /**
+     * 返回缓存的结果,没有的话调用{@link #compute}计算。
+     * 其他线程正在计算同一个源apk的话等待它计算完成
+     */
+    V get(ApkLayout srcLayout, FileChannel srcChannel) throws IOException {
+        Object key = srcLayout.getSourceKey() != null ? srcLayout.getSourceKey() : srcLayout;
+        Holder<V> holder;
+        synchronized (mHolders) {
+            holder = mHolders.get(key);
+            if (holder == null) {
+                holder = new Holder<>();
+                mHolders.put(key, holder);
+            }
+        }
+        synchronized (holder) {
+            if (holder.mValue == null) {
+                holder.mValue = compute(srcLayout, srcChannel);
+            }
+            return holder.mValue;
+        }
+    }
+
+    /**
+     * 计算源apk的结果,不能返回null
+     */
+    protected abstract V compute(ApkLayout srcLayout, FileChannel srcChannel) throws IOException;
+
+    private static class Holder<V> {
+        V mValue;
+    }
+}
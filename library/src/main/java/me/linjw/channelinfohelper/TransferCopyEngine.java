@@ -0,0 +1,56 @@
+package me.linjw.channelinfohelper;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 使用{@link FileChannel#transferTo}拷贝,数据不经过用户空间。
+ * 在linux上会走copy_file_range/sendfile这类内核拷贝。
+ *
+ * dst不能是非阻塞模式的channel,非阻塞的socket缓冲区满了之后transferTo和write都会一直返回0,
+ * 这里没有selector可以等待,只能直接抛出异常
+ */
+public class TransferCopyEngine implements ICopyEngine {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Override
+    public void copy(FileChannel src, long position, long length, WritableByteChannel dst) throws IOException {
+        if (dst instanceof SelectableChannel && !((SelectableChannel) dst).isBlocking()) {
+            throw new IOException("non-blocking channel is not supported");
+        }
+
+        long end = position + length;
+        while (position < end) {
+            // transferTo不保证一次拷贝完,需要循环直到拷贝完为止
+            long transferred = src.transferTo(position, end - position, dst);
+            ChannelInfoTrace.onTransfer(transferred);
+            if (transferred <= 0) {
+                if (position >= src.size()) {
+                    throw new EOFException("unexpected end of file at " + position);
+                }
+                // 有些channel在阻塞模式下transferTo也可能返回0,剩下的部分改成普通的读写,不在这里空转
+                copyByBuffer(src, position, end - position, dst);
+                return;
+            }
+            position += transferred;
+        }
+    }
+
+    private static void copyByBuffer(FileChannel src, long position, long length, WritableByteChannel dst)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, length));
+        long end = position + length;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            Utils.readFully(src, buffer, position);
+            buffer.flip();
+            position += buffer.remaining();
+            Utils.writeFully(dst, buffer);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package me.linjw.channelinfohelper;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+public class Utils {
+    // end of central directory record 的格式如下:
+    //
+    // end of central dir signature                                                    4 bytes  (0x06054b50)
+    // number of this disk                                                             2 bytes
+    // number of the disk with the start of the central directory                      2 bytes
+    // total number of entries in the central directory on this disk                   2 bytes
+    // total number of entries in the central directory                                2 bytes
+    // size of the central directory                                                   4 bytes
+    // offset of start of central directory with respect to the starting disk number   4 bytes
+    // .ZIP file comment length                                                        2 bytes
+    // .ZIP file comment                                                               (variable size)
+    //
+    // 前面22个字节是固定的,最后的[.ZIP file comment]长度是可变。可以为零,此时即为EOCD的最小长度22字节。
+    // 又由于它的长度必须保存在[.ZIP file comment length]里面,所以它最长两个字节的最大值,即0xffff。
+    // 再加上前面的22个字节就是EOCD的最大长度
+    public static final int EOCD_MIN_LENGTH = 22;
+    public static final int EOCD_MAX_LENGTH = 0xffff + 22;
+    public static final int EOCD_SIZE_OF_COMMENT_LENGTH = 2;
+    public static final int EOCD_SIG = 0x06054b50;
+    public static final int EOCD_POSITION_SOCD_OFFSET = 16;
+
+    public static final int CHANNEL_INFO_SIG = 0x06054b51;
+    public static final int CHANNEL_PAYLOAD_SIG = 0x06054b52;
+    public static final int CHANNEL_OVERLAY_SIG = 0x06054b53;
+
+    public static final String SIG_V2_MAGIC_NUMBER = "APK Sig Block 42";
+    // 编码好的魔数,只在库内部使用,不能修改
+    static final byte[] SIG_V2_MAGIC_NUMBER_BYTES = SIG_V2_MAGIC_NUMBER.getBytes(StandardCharsets.US_ASCII);
+
+    // 签名工具用来把APK签名块补齐到4096字节整数倍的键值对,Value全部为0
+    public static final int VERITY_PADDING_SIG = 0x42726577;
+
+    private static final int DIGEST_BUFFER_SIZE = 1024 * 1024;
+
+    private static final ICopyEngine sCopyEngine = new TransferCopyEngine();
+
+    // 读取基本类型用的buffer,每个线程各自一份,多线程同时读取时不会互相覆盖
+    private static final ThreadLocal<ByteBuffer> sReadBuffer = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        }
+    };
+
+    public static void safeClose(Closeable... closeables) {
+        for (Closeable closeable : closeables) {
+            if (closeable == null) {
+                continue;
+            }
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // 下面的读取方法都使用带position的FileChannel.read,不会修改文件的读写位置,
+    // 可以在多个线程里同时读取同一个文件
+
+    public static String readString(RandomAccessFile file, long position, int length) throws IOException {
+        return readString(file.getChannel(), position, length);
+    }
+
+    public static long readLong(RandomAccessFile file, long position) throws IOException {
+        return readLong(file.getChannel(), position);
+    }
+
+    public static int readInt(RandomAccessFile file, long position) throws IOException {
+        return readInt(file.getChannel(), position);
+    }
+
+    public static short readShort(RandomAccessFile file, long position) throws IOException {
+        return readShort(file.getChannel(), position);
+    }
+
+    public static String readString(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(channel, buffer, position);
+        return new String(buffer.array(), StandardCharsets.UTF_8);
+    }
+
+    public static long readLong(FileChannel channel, long position) throws IOException {
+        return read(channel, position, Long.BYTES).getLong(0);
+    }
+
+    public static int readInt(FileChannel channel, long position) throws IOException {
+        return read(channel, position, Integer.BYTES).getInt(0);
+    }
+
+    public static short readShort(FileChannel channel, long position) throws IOException {
+        return read(channel, position, Short.BYTES).getShort(0);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = sReadBuffer.get();
+        buffer.clear();
+        buffer.limit(length);
+        readFully(channel, buffer, position);
+        return buffer;
+    }
+
+    /**
+     * 从position开始读满整个buffer,不会修改channel的position
+     */
+    public static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            ChannelInfoTrace.onRead(read);
+            if (read < 0) {
+                throw new IOException("unexpected end of file at " + position);
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * 把buffer剩余的数据全部写到channel的当前位置
+     */
+    public static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            ChannelInfoTrace.onWrite(channel.write(buffer));
+        }
+    }
+
+    /**
+     * 转成小写的十六进制字符串
+     */
+    public static String toHex(byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = digits[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = digits[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    public static String readString(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static ByteBuffer readByLength(ByteBuffer src, int length) {
+        byte[] bytes = new byte[length];
+        src.get(bytes);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    public static void copyByLength(FileChannel srcChannel, FileChannel dstChannel, long length)
+            throws IOException {
+        // 从src的当前位置开始拷贝,拷贝完成后把src的位置移动到拷贝结束的地方
+        long position = srcChannel.position();
+        sCopyEngine.copy(srcChannel, position, length, dstChannel);
+        srcChannel.position(position + length);
+    }
+
+    /**
+     * 把channel从position开始的length个字节输入到所有的digest里,数据只读取一次,不会修改channel的position
+     */
+    public static void digest(FileChannel channel, long position, long length, MessageDigest... digests)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(DIGEST_BUFFER_SIZE, Math.max(length, 1)));
+        long end = position + length;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            readFully(channel, buffer, position);
+            buffer.flip();
+            position += buffer.remaining();
+            for (MessageDigest digest : digests) {
+                digest.update(buffer.duplicate());
+            }
+        }
+    }
+
+    /**
+     * FileOutputStream可以直接拿到FileChannel,这样拷贝的时候可以使用transferTo。
+     * 其他的OutputStream只能包装成普通的WritableByteChannel
+     */
+    public static WritableByteChannel toChannel(OutputStream output) {
+        if (output instanceof FileOutputStream) {
+            return ((FileOutputStream) output).getChannel();
+        }
+        return Channels.newChannel(output);
+    }
+
+    public static ByteBuffer findEocd(FileChannel zipFile) throws IOException {
+        // end of central directory record 是整个zip包的结尾
+        // 而且它以0x06054b50这个魔数做起始,所以只需从后往前遍历找到这个魔数,即可截取整个EOCD
+        //
+        // [zip包其余内容]      ...
+        //
+        // [EOCD]              end of central dir signature (0x06054b50)
+        //                     eocd其余部分
+        //
+        // 具体的查找过程见EocdLocator,它会先读取很小的一段数据,找不到再扩大范围
+        return EocdLocator.locate(zipFile);
+    }
+
+    /**
+     * 在从文件末尾读出来的数据里从后往前查找eocd,找不到的话返回null
+     */
+    public static ByteBuffer findEocd(ByteBuffer tail) {
+        return EocdLocator.find(tail);
+    }
+
+    public static Pair<Long, ByteBuffer> getSignV2Block(RandomAccessFile apk, long socdOffset) throws IOException {
+        // [APK签名块]插入在[central directory]之前,而[central directory]的起始位置可以在[EOCD]的socdOffset部分读取
+        //
+        //   [zip包其余内容]      ...
+        //
+        //                       1. APK签名块大小(不包含自己的8个字节)        8字节
+        //   [APK签名块]          2. ID-Value键值对                        大小可变
+        //                       3. APK签名块大小(和第1部分相等)             8字节
+        //                       4. 魔法数(固定为字符串"APK Sig Block 42")  16字节
+        //                                      <--------------------
+        // [central directory]   ...                                |
+        //                                                          |
+        //                       end of central dir signature       |
+        //                       ...                                |
+        //    [EOCD]             socdOffset  ------------------------
+        //                       ...
+        //
+
+
+        // 我们在socdOffset的位置往前读16个字节应该就能读到APK签名块的魔数
+        int magicNumberSize = SIG_V2_MAGIC_NUMBER_BYTES.length;
+        long magicNumberPosition = socdOffset - magicNumberSize;
+        if (magicNumberPosition - Long.BYTES < 0) {
+            System.out.println("Not find SIG V2 MAGIC NUMBER");
+            return null;
+        }
+        String magicNumber = Utils.readString(apk, magicNumberPosition, magicNumberSize);
+        if (!Utils.SIG_V2_MAGIC_NUMBER.equals(magicNumber)) {
+            System.out.println("Not find SIG V2 MAGIC NUMBER");
+            return null;
+        }
+
+        // 再往前读8个字节应该可以读到APK签名块的大小
+        long signV2BlockSize = Utils.readLong(apk, magicNumberPosition - Long.BYTES);
+
+        // 由于APK签名块的大小不包含开头第1部分的8个字节
+        // 所以再加上这8个字节才是APK签名块的真正大小
+        long signV2BlockRealSize = signV2BlockSize + Long.BYTES;
+
+        // APK签名块的内容需要放到一个ByteBuffer里,所以大小不能超过int的最大值
+        // 实际上int的最大值可以表示近2G的大小,apk签名块的大小基本不可能超过
+        long signV2BlockBegin = socdOffset - signV2BlockSize - Long.BYTES;
+        if (signV2BlockSize < 0 || signV2BlockRealSize > Integer.MAX_VALUE || signV2BlockBegin < 0) {
+            System.out.println("signV2BlockSize error");
+            return null;
+        }
+
+        // 读取第1部分验证与前面读到的signV2BlockSize应该要相等
+        if (signV2BlockSize != Utils.readLong(apk, signV2BlockBegin)) {
+            System.out.println("signV2BlockSize error");
+            return null;
+        }
+
+        // 读取APK签名块的内容
+        ByteBuffer signV2Block = ByteBuffer.allocate((int) (signV2BlockRealSize));
+        signV2Block.order(ByteOrder.LITTLE_ENDIAN);
+        readFully(apk.getChannel(), signV2Block, signV2BlockBegin);
+        signV2Block.clear();
+
+        return new Pair<>(signV2BlockBegin, signV2Block);
+    }
+
+    public static long getSocdOffset(ByteBuffer eocd) {
+        // 根据eocd结构可以知道socd offset的偏移是16,它是一个无符号的4字节整数
+        return eocd.getInt(EOCD_POSITION_SOCD_OFFSET) & 0xffffffffL;
+    }
+
+    /**
+     * 支持zip64格式的socd offset读取,eocd必须是从zipFile末尾找到的
+     */
+    public static long getSocdOffset(FileChannel zipFile, ByteBuffer eocd) throws IOException {
+        long socdOffset = getSocdOffset(eocd);
+        if (socdOffset != Zip64Eocd.ZIP64_MAGIC_VALUE) {
+            return socdOffset;
+        }
+
+        // socd offset超过了4字节能表示的范围,需要从zip64 eocd record里读取
+        Zip64Eocd zip64Eocd = Zip64Eocd.read(zipFile, zipFile.size() - eocd.capacity());
+        return zip64Eocd == null ? -1 : zip64Eocd.getSocdOffset();
+    }
+
+    /**
+     * 修改eocd里的socd offset。超过4字节能表示的范围时,
+     * 如果有zip64 eocd record就写入0xffffffff,否则抛出IOException
+     */
+    public static void setSocdOffset(ByteBuffer eocd, long socdOffset, boolean zip64) throws IOException {
+        if (socdOffset >= Zip64Eocd.ZIP64_MAGIC_VALUE || (zip64 && getSocdOffset(eocd) == Zip64Eocd.ZIP64_MAGIC_VALUE)) {
+            if (!zip64) {
+                throw new IOException("socd offset " + socdOffset + " needs zip64");
+            }
+            socdOffset = Zip64Eocd.ZIP64_MAGIC_VALUE;
+        }
+        eocd.putInt(EOCD_POSITION_SOCD_OFFSET, (int) socdOffset);
+    }
+
+    public static class Pair<F, S> {
+        F first;
+        S second;
+
+        Pair(F f, S s) {
+            first = f;
+            second = s;
+        }
+    }
+}
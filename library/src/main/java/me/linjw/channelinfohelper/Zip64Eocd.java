@@ -0,0 +1,134 @@
+package me.linjw.channelinfohelper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * zip64格式的end of central directory。
+ * 当central directory的位置或大小超过4字节能表示的范围时,eocd里对应的字段会被设置为0xffffffff,
+ * 真正的值保存在zip64 end of central directory record里:
+ *
+ * [central directory]                      ...
+ *
+ * [zip64 end of central directory record]  zip64 end of central dir signature (0x06064b50)      4 bytes
+ *                                          size of zip64 end of central directory record       8 bytes
+ *                                          version made by                                     2 bytes
+ *                                          version needed to extract                           2 bytes
+ *                                          number of this disk                                 4 bytes
+ *                                          number of the disk with the start of the cd         4 bytes
+ *                                          total number of entries in the cd on this disk      8 bytes
+ *                                          total number of entries in the cd                   8 bytes
+ *                                          size of the central directory                       8 bytes
+ *                                          offset of start of central directory                8 bytes
+ *                                          zip64 extensible data sector                        (variable size)
+ *
+ * [zip64 end of central directory locator] zip64 end of central dir locator signature (0x07064b50) 4 bytes
+ *                                          number of the disk with the start of the zip64 eocd   4 bytes
+ *                                          relative offset of the zip64 eocd record              8 bytes
+ *                                          total number of disks                                 4 bytes
+ *
+ * [EOCD]                                   ...
+ */
+public class Zip64Eocd {
+    public static final int LOCATOR_SIG = 0x07064b50;
+    public static final int LOCATOR_LENGTH = 20;
+    public static final int LOCATOR_POSITION_RECORD_OFFSET = 8;
+
+    public static final int RECORD_SIG = 0x06064b50;
+    public static final int RECORD_MIN_LENGTH = 56;
+    public static final int RECORD_POSITION_SIZE = 4;
+    public static final int RECORD_POSITION_ENTRY_COUNT = 32;
+    public static final int RECORD_POSITION_CENTRAL_DIRECTORY_SIZE = 40;
+    public static final int RECORD_POSITION_SOCD_OFFSET = 48;
+
+    // eocd里的字段为这个值时表示需要从zip64 eocd record里读取
+    public static final long ZIP64_MAGIC_VALUE = 0xffffffffL;
+
+    private final long mRecordOffset;
+    private final ByteBuffer mRecord;
+    private final ByteBuffer mLocator;
+
+    private Zip64Eocd(long recordOffset, ByteBuffer record, ByteBuffer locator) {
+        mRecordOffset = recordOffset;
+        mRecord = record;
+        mLocator = locator;
+    }
+
+    /**
+     * 读取eocd前面的zip64 eocd locator以及它指向的zip64 eocd record,不是zip64格式的话返回null
+     */
+    public static Zip64Eocd read(FileChannel zipFile, long eocdOffset) throws IOException {
+        long locatorOffset = eocdOffset - LOCATOR_LENGTH;
+        if (locatorOffset < RECORD_MIN_LENGTH) {
+            return null;
+        }
+        ByteBuffer locator = ByteBuffer.allocate(LOCATOR_LENGTH);
+        locator.order(ByteOrder.LITTLE_ENDIAN);
+        Utils.readFully(zipFile, locator, locatorOffset);
+        if (locator.getInt(0) != LOCATOR_SIG) {
+            return null;
+        }
+
+        // zip64 eocd record应该紧挨着zip64 eocd locator
+        long recordOffset = locator.getLong(LOCATOR_POSITION_RECORD_OFFSET);
+        long recordLength = locatorOffset - recordOffset;
+        if (recordOffset < 0 || recordLength < RECORD_MIN_LENGTH || recordLength > Integer.MAX_VALUE) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate((int) recordLength);
+        record.order(ByteOrder.LITTLE_ENDIAN);
+        Utils.readFully(zipFile, record, recordOffset);
+        if (record.getInt(0) != RECORD_SIG
+                || record.getLong(RECORD_POSITION_SIZE) + Integer.BYTES + Long.BYTES != recordLength) {
+            return null;
+        }
+
+        locator.clear();
+        record.clear();
+        return new Zip64Eocd(recordOffset, record, locator);
+    }
+
+    /**
+     * zip64 eocd record在文件中的起始位置,也就是central directory的结束位置
+     */
+    public long getRecordOffset() {
+        return mRecordOffset;
+    }
+
+    /**
+     * zip64 eocd record和zip64 eocd locator的总长度
+     */
+    public int getLength() {
+        return mRecord.capacity() + mLocator.capacity();
+    }
+
+    public long getSocdOffset() {
+        return mRecord.getLong(RECORD_POSITION_SOCD_OFFSET);
+    }
+
+    public long getCentralDirectorySize() {
+        return mRecord.getLong(RECORD_POSITION_CENTRAL_DIRECTORY_SIZE);
+    }
+
+    public long getEntryCount() {
+        return mRecord.getLong(RECORD_POSITION_ENTRY_COUNT);
+    }
+
+    /**
+     * 生成新的zip64 eocd record和zip64 eocd locator。
+     * central directory移动之后,zip64 eocd record也会跟着移动同样的距离
+     */
+    public ByteBuffer build(long newSocdOffset) {
+        long delta = newSocdOffset - getSocdOffset();
+        ByteBuffer buffer = ByteBuffer.allocate(getLength());
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(mRecord.duplicate());
+        buffer.put(mLocator.duplicate());
+        buffer.putLong(RECORD_POSITION_SOCD_OFFSET, newSocdOffset);
+        buffer.putLong(mRecord.capacity() + LOCATOR_POSITION_RECORD_OFFSET, mRecordOffset + delta);
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,150 @@
+package me.linjw.channelinfohelper;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ChannelAuditScannerTest {
+    private static final int EOCD_LENGTH = 22;
+
+    @Test
+    public void v1Channel() throws IOException {
+        File apk = writeZip(createTempDir(), "v1.apk", "huawei");
+        ChannelAuditResult result = ChannelAuditScanner.audit(apk.getPath());
+        assertTrue(result.toString(), result.isOk());
+        assertEquals("huawei", result.getChannelInfo());
+        assertEquals(ChannelInfoTrace.VERSION_V1, result.getVersion());
+    }
+
+    @Test
+    public void noChannel() throws IOException {
+        File apk = writeZip(createTempDir(), "empty.apk", null);
+        ChannelAuditResult result = ChannelAuditScanner.audit(apk.getPath());
+        assertNull(result.getChannelInfo());
+        assertEquals(ChannelInfoTrace.VERSION_NONE, result.getVersion());
+        assertEquals(Collections.singleton(ChannelAuditResult.Anomaly.NO_CHANNEL), result.getAnomalies());
+    }
+
+    @Test
+    public void notZip() throws IOException {
+        File file = new File(createTempDir(), "text.apk");
+        write(file, "not a zip file".getBytes(StandardCharsets.UTF_8));
+        ChannelAuditResult result = ChannelAuditScanner.audit(file.getPath());
+        assertEquals(Collections.singleton(ChannelAuditResult.Anomaly.NOT_ZIP), result.getAnomalies());
+
+        result = ChannelAuditScanner.audit(new File(file.getParentFile(), "missing.apk").getPath());
+        assertEquals(Collections.singleton(ChannelAuditResult.Anomaly.IO_ERROR), result.getAnomalies());
+    }
+
+    @Test
+    public void scanDirectory() throws IOException {
+        File root = createTempDir();
+        File sub = new File(root, "sub");
+        assertTrue(sub.mkdir());
+        sub.deleteOnExit();
+        writeZip(root, "a.apk", "a");
+        writeZip(sub, "b.APK", "b");
+        writeZip(sub, "c.zip", "c");
+
+        final List<String> channels = new ArrayList<>();
+        ChannelAuditScanner scanner = new ChannelAuditScanner(2);
+        try {
+            int count = scanner.scan(root, new IChannelAuditListener() {
+                @Override
+                public void onResult(ChannelAuditResult result) {
+                    synchronized (channels) {
+                        channels.add(result.getChannelInfo());
+                    }
+                }
+            });
+            assertEquals(2, count);
+        } finally {
+            scanner.close();
+        }
+        Collections.sort(channels);
+        assertEquals("[a, b]", channels.toString());
+    }
+
+    @Test
+    public void corruptedNextToGood() throws IOException {
+        // 第一个键值对的长度大到溢出,损坏的apk只影响自己的结果,不会中断整个目录的检查
+        File root = createTempDir();
+        writeZip(root, "good.apk", "huawei");
+        File bad = new File(root, "bad.apk");
+        bad.deleteOnExit();
+        File signed = TestApk.createSigned(100, 16);
+        TestApk.writeLong(signed, 100 + Long.BYTES, Long.MAX_VALUE);
+        assertTrue(signed.renameTo(bad));
+
+        final Map<String, ChannelAuditResult> results = new HashMap<>();
+        ChannelAuditScanner scanner = new ChannelAuditScanner(2);
+        try {
+            scanner.scan(root, new IChannelAuditListener() {
+                @Override
+                public void onResult(ChannelAuditResult result) {
+                    synchronized (results) {
+                        results.put(new File(result.getPath()).getName(), result);
+                    }
+                }
+            });
+        } finally {
+            scanner.close();
+        }
+        assertEquals(2, results.size());
+        assertTrue(results.get("good.apk").isOk());
+        assertTrue(results.get("bad.apk").getAnomalies().contains(ChannelAuditResult.Anomaly.SIGN_BLOCK_CORRUPTED));
+    }
+
+    /**
+     * 只有eocd的空zip,channelInfo不为null时按V1格式把渠道信息写到zip注释里
+     */
+    private static File writeZip(File dir, String name, String channelInfo) throws IOException {
+        byte[] info = channelInfo == null ? new byte[0] : channelInfo.getBytes(StandardCharsets.UTF_8);
+        int commentLength = channelInfo == null ? 0 : info.length + Short.BYTES + Integer.BYTES;
+        ByteBuffer zip = ByteBuffer.allocate(EOCD_LENGTH + commentLength);
+        zip.order(ByteOrder.LITTLE_ENDIAN);
+        zip.putInt(Utils.EOCD_SIG);
+        zip.position(EOCD_LENGTH - Short.BYTES);
+        zip.putShort((short) commentLength);
+        if (channelInfo != null) {
+            zip.put(info);
+            zip.putShort((short) info.length);
+            zip.putInt(Utils.CHANNEL_INFO_SIG);
+        }
+
+        File file = new File(dir, name);
+        write(file, zip.array());
+        return file;
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(data);
+        } finally {
+            fos.close();
+        }
+        file.deleteOnExit();
+    }
+
+    private static File createTempDir() throws IOException {
+        File dir = File.createTempFile("audit", "");
+        assertTrue(dir.delete() && dir.mkdir());
+        dir.deleteOnExit();
+        return dir;
+    }
+}
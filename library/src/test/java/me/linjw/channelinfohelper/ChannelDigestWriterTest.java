@@ -0,0 +1,74 @@
+package me.linjw.channelinfohelper;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChannelDigestWriterTest {
+    private static final String[] ALGORITHMS = {"SHA-256", "MD5"};
+
+    @Test
+    public void v1() throws Exception {
+        verify(TestApk.create(4096), false);
+    }
+
+    @Test
+    public void v2() throws Exception {
+        verify(TestApk.createSigned(4096, -1), false);
+    }
+
+    @Test
+    public void v2ReusePadding() throws Exception {
+        verify(TestApk.createSigned(4096, 1024), true);
+    }
+
+    /**
+     * 同一个源apk写多个渠道,每个渠道包回调的摘要都要和直接对整个输出文件计算的摘要一致
+     */
+    private static void verify(File srcApk, boolean reusePadding) throws Exception {
+        final Map<String, ChannelDigest> digests = new HashMap<>();
+        ChannelDigestWriter writer = new ChannelDigestWriter(new TransferCopyEngine(), reusePadding,
+                new IChannelDigestListener() {
+                    @Override
+                    public void onDigest(String outputApk, ChannelDigest digest) {
+                        digests.put(outputApk, digest);
+                    }
+                }, ALGORITHMS);
+
+        String[] channels = {"huawei", "xiaomi", "", "oppo-long-channel-name"};
+        for (String channel : channels) {
+            File output = File.createTempFile("digest", ".apk");
+            output.deleteOnExit();
+            assertTrue(writer.addChannelInfo(srcApk.getPath(), output.getPath(), channel));
+
+            ChannelDigest digest = digests.get(output.getPath());
+            byte[] data = TestApk.readAll(output);
+            assertEquals(data.length, digest.getLength());
+            if (channel.isEmpty()) {
+                // 没有渠道信息时原样输出源apk,不能追加V1的空渠道信息
+                assertArrayEquals(TestApk.readAll(srcApk), data);
+            } else if (reusePadding) {
+                // 渠道信息放在padding里,渠道包和源apk一样大
+                assertEquals(srcApk.length(), data.length);
+            }
+            for (String algorithm : ALGORITHMS) {
+                assertArrayEquals(channel + " " + algorithm, digest(algorithm, data), digest.getDigest(algorithm));
+            }
+            if (!channel.isEmpty()) {
+                assertEquals(channel, ChannelInfoParser.getChannelInfo(output.getPath()));
+            }
+        }
+    }
+
+    private static byte[] digest(String algorithm, byte[] data) throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance(algorithm).digest(data);
+    }
+}
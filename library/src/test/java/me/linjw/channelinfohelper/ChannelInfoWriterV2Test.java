@@ -0,0 +1,119 @@
+package me.linjw.channelinfohelper;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChannelInfoWriterV2Test {
+    private static final int PREFIX_LENGTH = 1000;
+    private static final int PAIR_HEADER_LENGTH = Long.BYTES + Integer.BYTES;
+    // APK签名块开头的大小和假的V2签名之后就是padding键值对
+    private static final int PADDING_OFFSET = PREFIX_LENGTH + Long.BYTES + PAIR_HEADER_LENGTH + TestApk.SIGNATURE_LENGTH;
+
+    @Test
+    public void paddingExactFit() throws IOException {
+        // 渠道信息键值对和原来的padding键值对一样大,padding被完全替换掉
+        File src = TestApk.createSigned(PREFIX_LENGTH, 16);
+        String channel = "0123456789abcdef";
+        assertArrayEquals(expectInPadding(src, channel), TestApk.readAll(write(src, channel)));
+    }
+
+    @Test
+    public void paddingShrinks() throws IOException {
+        File src = TestApk.createSigned(PREFIX_LENGTH, 100);
+        assertArrayEquals(expectInPadding(src, "huawei"), TestApk.readAll(write(src, "huawei")));
+    }
+
+    @Test
+    public void paddingTooSmall() throws IOException {
+        // padding放不下渠道信息,或者放下之后剩余的空间不够一个padding键值对的头部,都改为追加键值对
+        File src = TestApk.createSigned(PREFIX_LENGTH, 16);
+        String[] channels = {"0123456789abcdefg", "0123456789"};
+        for (String channel : channels) {
+            File output = write(src, channel);
+            assertEquals(src.length() + PAIR_HEADER_LENGTH + channel.length(), output.length());
+            assertEquals(channel, ChannelInfoParser.getChannelInfo(output.getPath()));
+        }
+    }
+
+    @Test
+    public void reusedBuffersInPadding() throws IOException {
+        // 同一个线程先写一个很长的渠道,线程里复用的内存留下了它的数据,再写短渠道时padding仍然要全部为0
+        File src = TestApk.createSigned(PREFIX_LENGTH, 1024);
+        write(src, repeat('x', 900));
+        assertArrayEquals(expectInPadding(src, "a"), TestApk.readAll(write(src, "a")));
+    }
+
+    @Test
+    public void reusedBuffersAppend() throws Exception {
+        File[] sources = {TestApk.createSigned(PREFIX_LENGTH, -1), TestApk.create(PREFIX_LENGTH)};
+        for (final File src : sources) {
+            final ChannelInfoWriter writer = new ChannelInfoWriter();
+            File dirty = File.createTempFile("channel", ".apk");
+            dirty.deleteOnExit();
+            assertTrue(writer.addChannelInfo(src.getPath(), dirty.getPath(), repeat('x', 900)));
+            assertTrue(writer.addChannelInfo(src.getPath(), dirty.getPath(), "a"));
+
+            // 在新的线程里生成同一个渠道包作为对照,新线程的内存还没有被用过
+            final File clean = File.createTempFile("channel", ".apk");
+            clean.deleteOnExit();
+            final boolean[] success = new boolean[1];
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    success[0] = writer.addChannelInfo(src.getPath(), clean.getPath(), "a");
+                }
+            });
+            thread.start();
+            thread.join();
+            assertTrue(success[0]);
+            assertArrayEquals(TestApk.readAll(clean), TestApk.readAll(dirty));
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static File write(File src, String channel) throws IOException {
+        File output = File.createTempFile("channel", ".apk");
+        output.deleteOnExit();
+        assertTrue(new ChannelInfoWriterV2(new TransferCopyEngine(), true)
+                .addChannelInfo(src.getPath(), output.getPath(), channel));
+        return output;
+    }
+
+    /**
+     * 渠道信息键值对放在原来padding的位置,后面是缩小之后全部为0的padding,其余字节和源apk完全一样
+     */
+    private static byte[] expectInPadding(File src, String channel) throws IOException {
+        byte[] expected = TestApk.readAll(src);
+        ByteBuffer buffer = ByteBuffer.wrap(expected);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int paddingPairLength = (int) (Long.BYTES + buffer.getLong(PADDING_OFFSET));
+
+        byte[] value = channel.getBytes(StandardCharsets.UTF_8);
+        buffer.position(PADDING_OFFSET);
+        buffer.putLong(Integer.BYTES + value.length);
+        buffer.putInt(Utils.CHANNEL_INFO_SIG);
+        buffer.put(value);
+        int paddingSize = paddingPairLength - PAIR_HEADER_LENGTH - value.length;
+        if (paddingSize > 0) {
+            buffer.putLong(paddingSize - Long.BYTES);
+            buffer.putInt(Utils.VERITY_PADDING_SIG);
+            Arrays.fill(expected, buffer.position(), buffer.position() + paddingSize - PAIR_HEADER_LENGTH, (byte) 0);
+        }
+        return expected;
+    }
+}
@@ -0,0 +1,73 @@
+package me.linjw.channelinfohelper;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChannelOverlayTest {
+    @Test
+    public void writeAndRead() throws IOException {
+        File file = File.createTempFile("channel", ".overlay");
+        file.deleteOnExit();
+        byte[] digest = new byte[32];
+        digest[0] = 1;
+        byte[] tail = "tail".getBytes(StandardCharsets.UTF_8);
+        new ChannelOverlay(1000, digest, 900, ByteBuffer.wrap(tail)).writeTo(file.getPath());
+
+        ChannelOverlay overlay = ChannelOverlay.read(file.getPath());
+        assertEquals(1000, overlay.getBaseLength());
+        assertArrayEquals(digest, overlay.getBaseDigest());
+        assertEquals(900, overlay.getPrefixLength());
+        assertEquals(904, overlay.getLength());
+        ByteBuffer readTail = overlay.getTail();
+        byte[] bytes = new byte[readTail.remaining()];
+        readTail.get(bytes);
+        assertArrayEquals(tail, bytes);
+    }
+
+    @Test
+    public void matches() throws IOException {
+        File base = File.createTempFile("channel", ".apk");
+        base.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(base, "rw");
+        try {
+            raf.setLength(1000);
+            byte[] digest = ChannelOverlay.digest(raf.getChannel());
+            ChannelOverlay overlay = new ChannelOverlay(1000, digest, 900, ByteBuffer.allocate(10));
+            assertTrue(overlay.matches(raf.getChannel(), digest));
+            assertTrue(overlay.matches(raf.getChannel(), null));
+            assertFalse(overlay.matches(raf.getChannel(), new byte[32]));
+
+            raf.setLength(1001);
+            assertFalse(overlay.matches(raf.getChannel(), null));
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void notOverlay() throws IOException {
+        File file = File.createTempFile("channel", ".overlay");
+        file.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(100);
+            ChannelOverlay.read(raf.getChannel());
+            fail();
+        } catch (IOException e) {
+            // 期望抛出IOException
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package me.linjw.channelinfohelper;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChannelPayloadTest {
+    @Test
+    public void buildAndParse() {
+        byte[] config = new byte[]{1, 2, 3, 0, -1};
+        ChannelPayload payload = new ChannelPayload.Builder()
+                .put("channel", "huawei")
+                .put("sub_channel", "渠道A")
+                .put("campaign", "")
+                .put("config", config)
+                .build();
+
+        ChannelPayload parsed = ChannelPayload.parse(payload.toByteBuffer());
+        assertEquals(4, parsed.size());
+        assertEquals(Arrays.asList("channel", "sub_channel", "campaign", "config"), parsed.keys());
+        assertEquals("huawei", parsed.getString("channel"));
+        assertEquals("渠道A", parsed.getString("sub_channel"));
+        assertEquals("", parsed.getString("campaign"));
+        assertArrayEquals(config, parsed.getBytes("config"));
+        assertTrue(parsed.containsKey("config"));
+        assertFalse(parsed.containsKey("missing"));
+        assertNull(parsed.getString("missing"));
+    }
+
+    @Test
+    public void emptyPayload() {
+        ChannelPayload parsed = ChannelPayload.parse(new ChannelPayload.Builder().build().toByteBuffer());
+        assertEquals(0, parsed.size());
+        assertNull(parsed.getBytes("channel"));
+    }
+
+    @Test
+    public void tooManyEntries() {
+        // 超过上限的put抛出异常之后,Builder里仍然是上限个键值对,可以继续build;替换已有的key不受上限影响
+        ChannelPayload.Builder builder = new ChannelPayload.Builder();
+        byte[] value = new byte[0];
+        for (int i = 0; i < 0xffff; i++) {
+            builder.put(String.valueOf(i), value);
+        }
+        try {
+            builder.put("extra", value);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // 预期的异常
+        }
+        builder.put("0", "huawei");
+
+        ChannelPayload parsed = ChannelPayload.parse(builder.build().toByteBuffer());
+        assertEquals(0xffff, parsed.size());
+        assertFalse(parsed.containsKey("extra"));
+        assertEquals("huawei", parsed.getString("0"));
+    }
+
+    @Test
+    public void parseInvalid() {
+        assertNull(ChannelPayload.parse(ByteBuffer.allocate(1)));
+
+        // 索引指向的数据超出范围
+        ByteBuffer buffer = new ChannelPayload.Builder().put("channel", "huawei").build().toByteBuffer();
+        ByteBuffer truncated = ByteBuffer.allocate(buffer.remaining() - 1);
+        buffer.limit(buffer.limit() - 1);
+        truncated.put(buffer);
+        truncated.flip();
+        assertNull(ChannelPayload.parse(truncated));
+    }
+}
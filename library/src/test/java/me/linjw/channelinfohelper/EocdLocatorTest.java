@@ -0,0 +1,69 @@
+package me.linjw.channelinfohelper;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class EocdLocatorTest {
+    @Test
+    public void emptyComment() throws IOException {
+        assertEquals(Utils.EOCD_MIN_LENGTH, locate(1000, new byte[0]).capacity());
+    }
+
+    @Test
+    public void longComment() throws IOException {
+        // 注释长度超过第一次和第二次读取的范围
+        assertEquals(Utils.EOCD_MIN_LENGTH + 10000, locate(1000, new byte[10000]).capacity());
+        assertEquals(Utils.EOCD_MAX_LENGTH, locate(1000, new byte[0xffff]).capacity());
+    }
+
+    @Test
+    public void signatureInComment() throws IOException {
+        // 注释里刚好有eocd的魔数,但是它后面的注释长度没有延伸到文件末尾,不能当成eocd
+        ByteBuffer comment = ByteBuffer.allocate(100).order(ByteOrder.LITTLE_ENDIAN);
+        comment.putInt(70, Utils.EOCD_SIG);
+        ByteBuffer eocd = locate(1000, comment.array());
+        assertEquals(Utils.EOCD_MIN_LENGTH + 100, eocd.capacity());
+        assertEquals(100, eocd.getShort(Utils.EOCD_MIN_LENGTH - Utils.EOCD_SIZE_OF_COMMENT_LENGTH));
+    }
+
+    @Test
+    public void notZip() throws IOException {
+        File file = File.createTempFile("eocd", ".zip");
+        file.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(100000);
+            assertNull(EocdLocator.locate(raf.getChannel()));
+            raf.setLength(10);
+            assertNull(EocdLocator.locate(raf.getChannel()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static ByteBuffer locate(int prefixLength, byte[] comment) throws IOException {
+        ByteBuffer eocd = ByteBuffer.allocate(Utils.EOCD_MIN_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        eocd.putInt(Utils.EOCD_SIG);
+        eocd.putShort(Utils.EOCD_MIN_LENGTH - Utils.EOCD_SIZE_OF_COMMENT_LENGTH, (short) comment.length);
+
+        File file = File.createTempFile("eocd", ".zip");
+        file.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.write(new byte[prefixLength]);
+            raf.write(eocd.array());
+            raf.write(comment);
+            return EocdLocator.locate(raf.getChannel());
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package me.linjw.channelinfohelper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JournaledChannelInfoWriterTest {
+    private static final int EOCD_LENGTH = 22;
+
+    private File mDir;
+    private File mSrcApk;
+    private File mJournal;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("journal", "");
+        assertTrue(mDir.delete() && mDir.mkdir());
+        mDir.deleteOnExit();
+
+        // 只有eocd的空zip,没有APK签名块,使用V1的方式写入渠道信息
+        ByteBuffer zip = ByteBuffer.allocate(EOCD_LENGTH);
+        zip.order(ByteOrder.LITTLE_ENDIAN);
+        zip.putInt(Utils.EOCD_SIG);
+        mSrcApk = newFile("base.apk");
+        FileOutputStream fos = new FileOutputStream(mSrcApk);
+        try {
+            fos.write(zip.array());
+        } finally {
+            fos.close();
+        }
+        mJournal = newFile("journal.txt");
+    }
+
+    @Test
+    public void skipCompleted() throws IOException {
+        File a = newFile("a.apk");
+        File b = newFile("b.apk");
+        assertEquals(0, write(a, "a", b, "b"));
+
+        long modified = a.lastModified();
+        assertEquals(2, write(a, "a", b, "b"));
+        assertEquals(modified, a.lastModified());
+        assertEquals("a", ChannelInfoParser.getChannelInfo(a.getPath()));
+
+        // 渠道信息变了的话需要重新生成
+        assertEquals(1, write(a, "a", b, "c"));
+        assertEquals("c", ChannelInfoParser.getChannelInfo(b.getPath()));
+    }
+
+    @Test
+    public void redoTruncatedLine() throws IOException {
+        File a = newFile("a.apk");
+        File b = newFile("b.apk");
+        assertEquals(0, write(a, "a", b, "b"));
+
+        // 模拟写最后一行的时候退出,去掉换行、渠道信息和一部分路径,只留下了半行
+        RandomAccessFile journal = new RandomAccessFile(mJournal, "rw");
+        try {
+            journal.setLength(journal.length() - 10);
+        } finally {
+            journal.close();
+        }
+
+        assertEquals(1, write(a, "a", b, "b"));
+        assertEquals("b", ChannelInfoParser.getChannelInfo(b.getPath()));
+
+        // 重新生成的记录和半行不会连在一起,再运行一次全部跳过
+        assertEquals(2, write(a, "a", b, "b"));
+    }
+
+    @Test
+    public void sizeMismatch() throws IOException {
+        File a = newFile("a.apk");
+        File b = newFile("b.apk");
+        assertEquals(0, write(a, "a", b, "b"));
+        long length = b.length();
+
+        FileOutputStream fos = new FileOutputStream(b, true);
+        try {
+            fos.write(new byte[]{1, 2, 3});
+        } finally {
+            fos.close();
+        }
+
+        assertEquals(1, write(a, "a", b, "b"));
+        assertEquals(length, b.length());
+        assertEquals("b", ChannelInfoParser.getChannelInfo(b.getPath()));
+    }
+
+    @Test
+    public void escapeFields() throws IOException {
+        File a = newFile("a\tb.apk");
+        File b = newFile("b\\c.apk");
+        assertEquals(0, write(a, "line1\nline2", b, "tab\tback\\slash"));
+        assertEquals(2, write(a, "line1\nline2", b, "tab\tback\\slash"));
+        assertFalse(new File(a.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void emptyChannel() throws IOException {
+        // 被包装的writer在没有渠道信息时不生成文件,渠道包应该和源apk一样,而不是一个空文件
+        File a = newFile("a.apk");
+        File b = newFile("b.apk");
+        assertEquals(0, write(a, "", b, "b"));
+        assertArrayEquals(TestApk.readAll(mSrcApk), TestApk.readAll(a));
+        assertFalse(new File(a.getPath() + ".tmp").exists());
+        assertEquals(2, write(a, "", b, "b"));
+    }
+
+    /**
+     * 重新打开日志,依次写入两个渠道包
+     *
+     * @return 跳过的渠道包数量
+     */
+    private int write(File a, String channelA, File b, String channelB) throws IOException {
+        JournaledChannelInfoWriter writer = new JournaledChannelInfoWriter(mJournal.getPath());
+        try {
+            assertTrue(writer.addChannelInfo(mSrcApk.getPath(), a.getPath(), channelA));
+            assertTrue(writer.addChannelInfo(mSrcApk.getPath(), b.getPath(), channelB));
+            return writer.getSkipped();
+        } finally {
+            writer.close();
+        }
+    }
+
+    private File newFile(String name) {
+        File file = new File(mDir, name);
+        file.deleteOnExit();
+        return file;
+    }
+}
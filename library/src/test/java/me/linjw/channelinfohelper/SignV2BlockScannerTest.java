@@ -0,0 +1,50 @@
+package me.linjw.channelinfohelper;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class SignV2BlockScannerTest {
+    private static final int PREFIX_LENGTH = 100;
+
+    @Test
+    public void scanPairs() throws IOException {
+        File apk = TestApk.createSigned(PREFIX_LENGTH, 16);
+        assertEquals(2, count(apk));
+    }
+
+    @Test
+    public void oversizedPairLength() throws IOException {
+        // 键值对长度加上偏移会溢出成负数,不能越过签名块的边界继续遍历
+        long[] lengths = {Long.MAX_VALUE, Long.MAX_VALUE - PREFIX_LENGTH, Long.MIN_VALUE, 1L << 62};
+        for (long length : lengths) {
+            File apk = TestApk.createSigned(PREFIX_LENGTH, 16);
+            TestApk.writeLong(apk, PREFIX_LENGTH + Long.BYTES, length);
+            assertEquals(0, count(apk));
+            assertNull(ChannelInfoParser.getChannelInfo(apk.getPath()));
+        }
+    }
+
+    private static int count(File apk) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(apk, "r");
+        try {
+            ByteBuffer eocd = Utils.findEocd(raf.getChannel());
+            SignV2BlockScanner scanner = SignV2BlockScanner.open(raf.getChannel(), Utils.getSocdOffset(eocd));
+            assertNotNull(scanner);
+            int count = 0;
+            for (SignV2BlockScanner.Entry entry : scanner) {
+                count++;
+            }
+            return count;
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package me.linjw.channelinfohelper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 单元测试用的最小apk: 开头一段填充数据代替zip的文件内容,central directory为空,
+ * 可以带一个APK签名块,签名块里有一个假的V2签名和可选的verity padding
+ */
+final class TestApk {
+    static final int EOCD_LENGTH = 22;
+    static final int SIGNATURE_SCHEME_V2_ID = 0x7109871a;
+    static final int SIGNATURE_LENGTH = 32;
+
+    private TestApk() {
+    }
+
+    /**
+     * 没有APK签名块,只能用V1的方式写入渠道信息
+     */
+    static File create(int prefixLength) throws IOException {
+        return create(prefixLength, false, 0);
+    }
+
+    /**
+     * @param paddingLength verity padding键值对Value的长度,小于0表示没有padding
+     */
+    static File createSigned(int prefixLength, int paddingLength) throws IOException {
+        return create(prefixLength, true, paddingLength);
+    }
+
+    static byte[] readAll(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            return data;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * 用小端序改写文件里的一个long,用于构造损坏的apk
+     */
+    static void writeLong(File file, long position, long value) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(0, value);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(position);
+            raf.write(buffer.array());
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static File create(int prefixLength, boolean signed, int paddingLength) throws IOException {
+        int pairsLength = 0;
+        if (signed) {
+            pairsLength += Long.BYTES + Integer.BYTES + SIGNATURE_LENGTH;
+            if (paddingLength >= 0) {
+                pairsLength += Long.BYTES + Integer.BYTES + paddingLength;
+            }
+        }
+        int blockLength = signed ? Long.BYTES + pairsLength + Long.BYTES + Utils.SIG_V2_MAGIC_NUMBER_BYTES.length : 0;
+
+        ByteBuffer apk = ByteBuffer.allocate(prefixLength + blockLength + EOCD_LENGTH);
+        apk.order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < prefixLength; i++) {
+            apk.put((byte) i);
+        }
+        if (signed) {
+            long size = blockLength - Long.BYTES;
+            apk.putLong(size);
+            apk.putLong(Integer.BYTES + SIGNATURE_LENGTH);
+            apk.putInt(SIGNATURE_SCHEME_V2_ID);
+            for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+                apk.put((byte) (0x80 | i));
+            }
+            if (paddingLength >= 0) {
+                apk.putLong(Integer.BYTES + paddingLength);
+                apk.putInt(Utils.VERITY_PADDING_SIG);
+                apk.position(apk.position() + paddingLength);
+            }
+            apk.putLong(size);
+            apk.put(Utils.SIG_V2_MAGIC_NUMBER_BYTES);
+        }
+
+        // central directory为空,socd offset指向eocd自己
+        int socdOffset = apk.position();
+        apk.putInt(Utils.EOCD_SIG);
+        apk.position(socdOffset + 16);
+        apk.putInt(socdOffset);
+
+        File file = File.createTempFile("test", ".apk");
+        file.deleteOnExit();
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(apk.array());
+        } finally {
+            fos.close();
+        }
+        return file;
+    }
+}